@@ -0,0 +1,180 @@
+package com.james090500.loadtest;
+
+import com.james090500.network.Protocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One headless player. Joins, waits for the chunks around spawn, then walks its pattern and
+ * places blocks, feeding what it sees into the {@link LoadTest} stats.
+ */
+public class Bot extends SimpleChannelInboundHandler<ByteBuf> {
+
+    // Chunks within this radius of spawn must arrive before the bot counts as spawned
+    private static final int SPAWN_RADIUS = 2;
+    private static final float TICK_SECONDS = 0.05f;
+
+    private final int index;
+    private final LoadTest test;
+    private final LoadTest.Options options;
+    private final Random random;
+
+    private ChannelHandlerContext ctx;
+    private ScheduledFuture<?> ticker;
+    private long connectedAt;
+    private final Set<Long> spawnChunks = new HashSet<>();
+    private volatile boolean ready = false;
+
+    private float x = 0, y = 100, z = 0;
+    private double heading;
+    private int ticks = 0;
+    private int placed = 0;
+
+    public Bot(int index, LoadTest test, LoadTest.Options options) {
+        this.index = index;
+        this.test = test;
+        this.options = options;
+        this.random = new Random(options.seed * 31 + index);
+        this.heading = index * 2.399963; // golden angle, spreads the bots out
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        this.connectedAt = System.nanoTime();
+        for (int dx = -SPAWN_RADIUS; dx <= SPAWN_RADIUS; dx++) {
+            for (int dz = -SPAWN_RADIUS; dz <= SPAWN_RADIUS; dz++) {
+                if (dx * dx + dz * dz <= SPAWN_RADIUS * SPAWN_RADIUS) spawnChunks.add(key(dx, dz));
+            }
+        }
+
+        ByteBuf out = ctx.alloc().buffer(8);
+        out.writeInt(Protocol.CONNECT);
+        out.writeInt(options.capabilities);
+        ctx.writeAndFlush(out);
+
+        this.ticker = ctx.executor().scheduleAtFixedRate(this::tick, 50, 50, TimeUnit.MILLISECONDS);
+        test.connected.increment();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        if (ticker != null) ticker.cancel(false);
+        test.disconnected.increment();
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+        int frameLength = msg.readableBytes() + 4;
+        int id = msg.readInt();
+        switch (id) {
+            case Protocol.CHUNK, Protocol.COMPRESSED_CHUNK -> {
+                int chunkX = msg.readInt();
+                int chunkZ = msg.readInt();
+                test.chunks.increment();
+                test.chunkBytes.add(frameLength);
+                if (!ready && spawnChunks.remove(key(chunkX, chunkZ)) && spawnChunks.isEmpty()) {
+                    ready = true;
+                    test.joinTimes.record(System.nanoTime() - connectedAt);
+                }
+            }
+            case Protocol.BLOCK_UPDATE -> test.blockReceived(msg.readInt(), msg.readInt(), msg.readInt());
+            case Protocol.MULTI_BLOCK_CHANGE -> {
+                int chunkX = msg.readInt();
+                int chunkZ = msg.readInt();
+                int count = msg.readInt();
+                for (int i = 0; i < count; i++) {
+                    int edit = msg.readInt();
+                    test.blockReceived(chunkX * 16 + (edit & 15), (edit >>> 8) & 511, chunkZ * 16 + ((edit >>> 4) & 15));
+                }
+            }
+            default -> test.otherPackets.increment();
+        }
+        test.bytes.add(frameLength);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        LoadTest.getLogger().warning("Bot " + index + ": " + cause);
+        ctx.close();
+    }
+
+    /**
+     * Move and build, once the spawn area has loaded
+     */
+    private void tick() {
+        if (!ready) return;
+        ticks++;
+
+        if (move()) {
+            ByteBuf out = ctx.alloc().buffer(16);
+            out.writeInt(Protocol.POSITION);
+            out.writeFloat(x);
+            out.writeFloat(y);
+            out.writeFloat(z);
+            ctx.write(out);
+        }
+
+        if (options.placeIntervalTicks > 0 && ticks % options.placeIntervalTicks == 0) {
+            // Somewhere near us and above the terrain, unique per bot so receivers can match it up
+            int bx = (int) Math.floor(x) + (placed % 8) - 4;
+            int by = 200 + index % 90;
+            int bz = (int) Math.floor(z) + (placed / 8 % 8) - 4;
+            byte block = (byte) (placed / 64 % 2 == 0 ? 1 : 0);
+            placed++;
+
+            test.blockSent(bx, by, bz);
+            ByteBuf out = ctx.alloc().buffer(17);
+            out.writeInt(Protocol.BLOCK_UPDATE);
+            out.writeInt(bx);
+            out.writeInt(by);
+            out.writeInt(bz);
+            out.writeByte(block);
+            ctx.write(out);
+        }
+        ctx.flush();
+    }
+
+    /**
+     * Step along the walk pattern
+     * @return Whether the position changed
+     */
+    private boolean move() {
+        float step = options.speed * TICK_SECONDS;
+        switch (options.pattern) {
+            case "line" -> {
+                x += (float) (Math.cos(heading) * step);
+                z += (float) (Math.sin(heading) * step);
+            }
+            case "circle" -> {
+                heading += step / options.radius;
+                x = (float) (Math.cos(heading) * options.radius);
+                z = (float) (Math.sin(heading) * options.radius);
+            }
+            case "random" -> {
+                if (ticks % 20 == 0) heading = random.nextDouble() * Math.PI * 2;
+                x += (float) (Math.cos(heading) * step);
+                z += (float) (Math.sin(heading) * step);
+            }
+            default -> {
+                return false; // idle
+            }
+        }
+        return true;
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+}
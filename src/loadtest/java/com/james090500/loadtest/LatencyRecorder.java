@@ -0,0 +1,39 @@
+package com.james090500.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples from any thread and reports percentiles
+ */
+public class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int size = 0;
+
+    public synchronized void record(long nanos) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = nanos;
+    }
+
+    public synchronized int count() {
+        return size;
+    }
+
+    /**
+     * @param fraction 0.5 for the median, 0.99 for p99
+     * @return The percentile in milliseconds, 0 with no samples
+     */
+    public synchronized double percentileMs(double fraction) {
+        if (size == 0) return 0;
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        return sorted[Math.min(size - 1, (int) (size * fraction))] / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%.1fms p99=%.1fms max=%.1fms", count(), percentileMs(0.5), percentileMs(0.99), percentileMs(1));
+    }
+}
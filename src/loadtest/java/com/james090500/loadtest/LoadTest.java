@@ -0,0 +1,223 @@
+package com.james090500.loadtest;
+
+import com.james090500.BlockGameServer;
+import com.james090500.network.Protocol;
+import com.james090500.utils.GameLogger;
+import com.james090500.utils.ThreadUtil;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Load generator: connects a number of headless bots to a server, has them walk and build,
+ * and reports join time, chunk throughput, block update latency and (when the server runs
+ * in this process) tick time.
+ *
+ * Options:
+ *   --host 127.0.0.1      --port 28004       server to test
+ *   --embedded            start a server in this process instead, tick times are only known then
+ *   --bots 10             how many bots
+ *   --join-interval 100   ms between bots joining
+ *   --duration 60         seconds to run once the last bot has joined
+ *   --pattern idle        idle, line, circle or random
+ *   --speed 4.3           blocks per second
+ *   --radius 32           circle radius
+ *   --place-interval 20   ticks between block placements per bot, 0 for none
+ *   --caps 7              Protocol.CAP_* flags the bots advertise
+ *   --seed 1              for the random walk
+ */
+public class LoadTest {
+
+    private static final Logger logger = GameLogger.get("LoadTest");
+
+    public static Logger getLogger() {
+        return logger;
+    }
+
+    public static class Options {
+        String host = "127.0.0.1";
+        int port = 28004;
+        boolean embedded = false;
+        int bots = 10;
+        int joinIntervalMs = 100;
+        int durationSeconds = 60;
+        String pattern = "idle";
+        float speed = 4.3f;
+        float radius = 32;
+        int placeIntervalTicks = 20;
+        int capabilities = Protocol.CAP_LZ4_CHUNKS | Protocol.CAP_MULTI_BLOCK | Protocol.CAP_ENTITY_DELTAS;
+        long seed = 1;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--embedded")) {
+                    options.embedded = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+                String value = args[++i];
+                switch (arg) {
+                    case "--host" -> options.host = value;
+                    case "--port" -> options.port = Integer.parseInt(value);
+                    case "--bots" -> options.bots = Integer.parseInt(value);
+                    case "--join-interval" -> options.joinIntervalMs = Integer.parseInt(value);
+                    case "--duration" -> options.durationSeconds = Integer.parseInt(value);
+                    case "--pattern" -> options.pattern = value;
+                    case "--speed" -> options.speed = Float.parseFloat(value);
+                    case "--radius" -> options.radius = Float.parseFloat(value);
+                    case "--place-interval" -> options.placeIntervalTicks = Integer.parseInt(value);
+                    case "--caps" -> options.capabilities = Integer.parseInt(value);
+                    case "--seed" -> options.seed = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            return options;
+        }
+    }
+
+    final LongAdder connected = new LongAdder();
+    final LongAdder disconnected = new LongAdder();
+    final LongAdder chunks = new LongAdder();
+    final LongAdder chunkBytes = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+    final LongAdder otherPackets = new LongAdder();
+    final LongAdder blocksSent = new LongAdder();
+    final LatencyRecorder joinTimes = new LatencyRecorder();
+    final LatencyRecorder blockLatency = new LatencyRecorder();
+
+    // Placements not yet seen by another bot, by position
+    private final Map<Long, Long> pendingBlocks = new ConcurrentHashMap<>();
+
+    private final Options options;
+    private final List<Bot> bots = new ArrayList<>();
+
+    public LoadTest(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        if (options.embedded) {
+            new BlockGameServer();
+            Thread.sleep(2000); // let it bind
+        }
+
+        new LoadTest(options).run();
+
+        if (options.embedded) {
+            // Stop it the way the console does, on the tick thread
+            ThreadUtil.getMainQueue().add(() -> BlockGameServer.getInstance().exit());
+            BlockGameServer.getInstance().getTickExec().awaitTermination(60, TimeUnit.SECONDS);
+        }
+        System.exit(0);
+    }
+
+    void blockSent(int x, int y, int z) {
+        blocksSent.increment();
+        pendingBlocks.put(blockKey(x, y, z), System.nanoTime());
+    }
+
+    void blockReceived(int x, int y, int z) {
+        Long sentAt = pendingBlocks.remove(blockKey(x, y, z));
+        if (sentAt != null) {
+            blockLatency.record(System.nanoTime() - sentAt);
+        }
+    }
+
+    private void run() throws InterruptedException {
+        logger.info(String.format("%d bots -> %s:%d, pattern=%s, place every %d ticks, caps=%d",
+                options.bots, options.host, options.port, options.pattern, options.placeIntervalTicks, options.capabilities));
+
+        EventLoopGroup group = new MultiThreadIoEventLoopGroup(NioIoHandler.newFactory());
+        List<Channel> channels = new ArrayList<>();
+        try {
+            long start = System.nanoTime();
+            long lastReport = start;
+            long lastChunks = 0, lastBytes = 0;
+
+            for (int i = 0; i < options.bots; i++) {
+                Bot bot = new Bot(i, this, options);
+                bots.add(bot);
+                Bootstrap bootstrap = new Bootstrap()
+                        .group(group)
+                        .channel(NioSocketChannel.class)
+                        .option(ChannelOption.TCP_NODELAY, true)
+                        .handler(new ChannelInitializer<SocketChannel>() {
+                            @Override
+                            protected void initChannel(SocketChannel ch) {
+                                ch.pipeline().addLast(
+                                        new LengthFieldBasedFrameDecoder(Protocol.MAX_FRAME_LENGTH, 0, 4, 0, 4),
+                                        new LengthFieldPrepender(4),
+                                        bot);
+                            }
+                        });
+                channels.add(bootstrap.connect(options.host, options.port).sync().channel());
+                Thread.sleep(options.joinIntervalMs);
+            }
+
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+            while (System.nanoTime() < end) {
+                Thread.sleep(1000);
+                long now = System.nanoTime();
+                if (now - lastReport >= TimeUnit.SECONDS.toNanos(5)) {
+                    double seconds = (now - lastReport) / 1e9;
+                    long c = chunks.sum(), b = bytes.sum();
+                    logger.info(String.format("%ds: ready=%d/%d chunks=%.0f/s %.2fMB/s join[%s] block[%s] tick[%s]",
+                            (now - start) / 1_000_000_000L, readyCount(), options.bots,
+                            (c - lastChunks) / seconds, (b - lastBytes) / seconds / 1e6,
+                            joinTimes, blockLatency, tickStats()));
+                    lastReport = now;
+                    lastChunks = c;
+                    lastBytes = b;
+                }
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            logger.info("Results over " + String.format("%.0f", seconds) + "s");
+            logger.info(String.format("  bots:        %d connected, %d ready, %d disconnected", connected.sum(), readyCount(), disconnected.sum()));
+            logger.info("  join->ready: " + joinTimes);
+            logger.info(String.format("  chunks:      %d (%.0f/s, %.1fMB)", chunks.sum(), chunks.sum() / seconds, chunkBytes.sum() / 1e6));
+            logger.info(String.format("  received:    %.1fMB (%.2fMB/s), %d other packets", bytes.sum() / 1e6, bytes.sum() / seconds / 1e6, otherPackets.sum()));
+            logger.info(String.format("  blocks:      %d placed, latency to first other bot %s", blocksSent.sum(), blockLatency));
+            logger.info("  server tick: " + tickStats());
+        } finally {
+            for (Channel channel : channels) channel.close();
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    private int readyCount() {
+        int ready = 0;
+        for (Bot bot : bots) {
+            if (bot.isReady()) ready++;
+        }
+        return ready;
+    }
+
+    private String tickStats() {
+        BlockGameServer server = BlockGameServer.getInstance();
+        return server == null ? "n/a, run 'metrics' on the server" : server.getTickStats().snapshot().toString();
+    }
+
+    private static long blockKey(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 35) | ((long) (y & 0x1FF) << 26) | (z & 0x3FFFFFF);
+    }
+}
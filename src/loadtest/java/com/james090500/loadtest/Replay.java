@@ -0,0 +1,230 @@
+package com.james090500.loadtest;
+
+import com.james090500.BlockGameServer;
+import com.james090500.network.Protocol;
+import com.james090500.network.TraceRecorder;
+import com.james090500.utils.GameLogger;
+import com.james090500.utils.ThreadUtil;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldPrepender;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Replays traffic recorded with trace-file (see TraceRecorder) against a server, so two builds
+ * can be compared on the same workload. By default it starts a fresh server in this process
+ * with a fixed seed, so the world is the same every run, and reports tick time, tick thread
+ * allocation and GC at the end. The embedded server runs in the working directory, which must be
+ * empty or left over from an earlier replay.
+ *
+ * Options:
+ *   --trace <file>       recording to replay, required
+ *   --speed 1            1 for the recorded timing, max for as fast as possible. At max speed
+ *                        connections stay open until the end, or they'd close before the server answers.
+ *   --seed 12345         world seed for the embedded server
+ *   --settle 5           seconds to keep the server running after the last event
+ *   --host / --port      replay against a running server instead, tick stats are then not known
+ */
+public class Replay {
+
+    private static final Logger logger = GameLogger.get("Replay");
+
+    // Left in the working directory so a later run knows it may wipe it
+    private static final String MARKER = ".replay";
+
+    public static void main(String[] args) throws Exception {
+        String trace = null;
+        String host = null;
+        int port = 28004;
+        boolean asFastAsPossible = false;
+        int seed = 12345;
+        int settleSeconds = 5;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+            String value = args[++i];
+            switch (arg) {
+                case "--trace" -> trace = value;
+                case "--speed" -> asFastAsPossible = switch (value) {
+                    case "1" -> false;
+                    case "max" -> true;
+                    default -> throw new IllegalArgumentException("--speed must be 1 or max, not " + value);
+                };
+                case "--seed" -> seed = Integer.parseInt(value);
+                case "--settle" -> settleSeconds = Integer.parseInt(value);
+                case "--host" -> host = value;
+                case "--port" -> port = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (trace == null) throw new IllegalArgumentException("--trace is required");
+
+        boolean embedded = host == null;
+        if (embedded) {
+            startServer(seed, port);
+            host = "127.0.0.1";
+        }
+
+        long gcCountBefore = gcCount(), gcTimeBefore = gcTime();
+        long start = System.nanoTime();
+        int[] counts = replay(new File(trace), host, port, asFastAsPossible, settleSeconds);
+        logger.info("Replayed " + counts[0] + " connections and " + counts[1] + " frames in "
+                + String.format("%.1fs", (System.nanoTime() - start) / 1e9));
+        if (!asFastAsPossible) {
+            // Max speed settles with the connections still open, in replay
+            Thread.sleep(settleSeconds * 1000L);
+        }
+
+        // One line per measurement, stable enough to diff between builds
+        logger.info("Results (" + (asFastAsPossible ? "max speed" : "1x") + ", seed " + seed + ")");
+        if (embedded) {
+            logger.info("  tick: " + BlockGameServer.getInstance().getTickStats().snapshot());
+        } else {
+            logger.info("  tick: n/a, run 'metrics' on the server");
+        }
+        logger.info(String.format("  gc:   collections=%d time=%dms", gcCount() - gcCountBefore, gcTime() - gcTimeBefore));
+
+        if (embedded) {
+            ThreadUtil.getMainQueue().add(() -> BlockGameServer.getInstance().exit());
+            BlockGameServer.getInstance().getTickExec().awaitTermination(60, TimeUnit.SECONDS);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Start a server on a fresh world with a fixed seed. The server keeps its config and worlds in
+     * the working directory, so this only runs in an empty directory or one a previous replay set up,
+     * never over a real server's world.
+     */
+    private static void startServer(int seed, int port) throws IOException, InterruptedException {
+        Path dir = Path.of("").toAbsolutePath();
+        Path marker = dir.resolve(MARKER);
+        try (Stream<Path> files = Files.list(dir)) {
+            if (!Files.exists(marker) && files.findAny().isPresent()) {
+                throw new IllegalStateException(dir + " isn't empty and wasn't set up by Replay, run it from an empty directory (gradle replay uses build/replay)");
+            }
+        }
+        Files.writeString(marker, "Working directory for Replay, everything here is replaced on each run\n");
+
+        // The region files live in world/, the rest of the world in worlds/
+        for (String name : new String[]{"worlds", "world"}) {
+            Path world = dir.resolve(name);
+            if (!Files.exists(world)) continue;
+            try (Stream<Path> files = Files.walk(world)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        try (Writer writer = new FileWriter("server.properties")) {
+            // No rate limits, a replay at max speed would trip them. Frames the recording server dropped
+            // aren't in the trace, so this still replays what it handled
+            writer.write("world-seed=" + seed + "\nport=" + port + "\nrate-limits=\n");
+        }
+
+        new BlockGameServer();
+        Thread.sleep(2000); // let it bind
+    }
+
+    /**
+     * Send the recorded frames, opening and closing connections where the recording did
+     * @return connections and frames replayed
+     */
+    private static int[] replay(File file, String host, int port, boolean asFastAsPossible, int settleSeconds) throws IOException, InterruptedException {
+        EventLoopGroup group = new MultiThreadIoEventLoopGroup(NioIoHandler.newFactory());
+        LongAdder received = new LongAdder();
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new LengthFieldPrepender(4), new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                // Read and drop what the server sends so it never backs up on us
+                                received.add(((ByteBuf) msg).readableBytes());
+                                ((ByteBuf) msg).release();
+                            }
+                        });
+                    }
+                });
+
+        Map<Integer, Channel> channels = new HashMap<>();
+        int connections = 0, frames = 0;
+        long start = System.nanoTime();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != TraceRecorder.MAGIC || in.readInt() != TraceRecorder.VERSION) {
+                throw new IOException(file + " isn't a version " + TraceRecorder.VERSION + " trace");
+            }
+
+            while (true) {
+                long at;
+                try {
+                    at = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                int connection = in.readInt();
+                int length = in.readInt();
+                if (length > Protocol.MAX_FRAME_LENGTH) throw new IOException("Corrupt trace, frame of " + length + " bytes");
+
+                byte[] frame = length > 0 ? in.readNBytes(length) : null;
+
+                if (!asFastAsPossible) {
+                    long wait = at - (System.nanoTime() - start);
+                    if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                }
+
+                if (length == TraceRecorder.OPEN) {
+                    channels.put(connection, bootstrap.connect(host, port).sync().channel());
+                    connections++;
+                } else if (length == TraceRecorder.CLOSE) {
+                    if (asFastAsPossible) continue; // closed in the finally
+                    Channel channel = channels.remove(connection);
+                    if (channel != null) channel.close();
+                } else {
+                    Channel channel = channels.get(connection);
+                    if (channel == null) continue; // opened before the recording started
+                    channel.writeAndFlush(channel.alloc().buffer(length).writeBytes(frame));
+                    frames++;
+                }
+            }
+            if (asFastAsPossible) {
+                Thread.sleep(settleSeconds * 1000L);
+            }
+        } finally {
+            for (Channel channel : channels.values()) channel.close();
+            group.shutdownGracefully().sync();
+        }
+        logger.info(String.format("Server sent %.1fMB back", received.sum() / 1e6));
+        return new int[]{connections, frames};
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) time += Math.max(0, gc.getCollectionTime());
+        return time;
+    }
+}
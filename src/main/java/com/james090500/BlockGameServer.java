@@ -1,15 +1,19 @@
 package com.james090500;
 
 import com.james090500.command.CommandHandler;
+import com.james090500.network.AdmissionController;
+import com.james090500.network.Connection;
 import com.james090500.network.NettyHandler;
 import com.james090500.utils.GameLogger;
 import com.james090500.utils.ThreadUtil;
+import com.james090500.utils.TickStats;
 import com.james090500.world.World;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelId;
 import lombok.Getter;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashMap;
@@ -37,15 +41,19 @@ public class BlockGameServer {
     @Getter
     private static final Logger logger = GameLogger.get("BlockGameServer");
 
-    private final int port = 28004;
+    private final ServerConfig config;
+    private final TickStats tickStats = new TickStats();
     private final NettyHandler nettyHandler;
+    private final AdmissionController admissionController;
     private final World world;
 
     public BlockGameServer() {
         instance = this;
+        this.config = ServerConfig.load(new File("server.properties"));
         this.commandHandler = new CommandHandler();
-        this.world = new World("world");
-        this.nettyHandler = new NettyHandler(port);
+        this.world = new World("world", config.getWorldSeed());
+        this.admissionController = new AdmissionController(config);
+        this.nettyHandler = new NettyHandler(config);
         this.nettyHandler.run();
 
         running.set(true);
@@ -60,19 +68,31 @@ public class BlockGameServer {
 
     private void tick() {
         if(running.get()) {
+            long start = System.nanoTime();
+            long allocated = TickStats.allocatedBytes();
             ThreadUtil.runMainQueue();
+            if (!running.get()) return; // stopped by a command, the world is closed
+            Connection.drainAll(config.getInboundBudget());
+            this.admissionController.tick();
             this.world.update();
+
+            // One flush per player for everything sent this tick
+            this.players.values().forEach(Player::flush);
+            this.world.getViewDistanceController().tick(this.players.values(), tickStats.getRecentNanos());
+            tickStats.record(System.nanoTime() - start, TickStats.allocatedBytes() - allocated);
         }
     }
 
     public void exit() {
         getLogger().info("Server is shutting down...");
         if (!running.getAndSet(false)) return;
-        tickExec.shutdownNow();
+        // Not shutdownNow, we're normally called from the tick thread and an interrupt would close the region files mid save
+        tickExec.shutdown();
         this.nettyHandler.exit();
 
-        ThreadUtil.shutdown();
+        // Save before the worker queues go away so in-flight autosaves can finish
         this.world.exitWorld();
+        ThreadUtil.shutdown();
     }
 
 }
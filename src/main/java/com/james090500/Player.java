@@ -1,21 +1,56 @@
 package com.james090500;
 
+import com.james090500.network.NetworkMetricsHandler;
 import com.james090500.network.packets.BlockGamePacket;
-import com.james090500.network.packets.ChunkPacket;
+import com.james090500.utils.Metrics;
 import com.james090500.world.World;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.FileRegion;
 import lombok.Getter;
 import lombok.Setter;
 import org.joml.Vector3f;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Player {
 
+    private static final LongAdder writes = new LongAdder();
+    private static final LongAdder flushes = new LongAdder();
+
+    static {
+        Metrics.register("net.flush", () -> {
+            long w = writes.sum();
+            long f = flushes.sum();
+            return String.format("writes=%d flushes=%d writesPerFlush=%.1f", w, f, f == 0 ? 0.0 : (double) w / f);
+        });
+        Metrics.register("net.chunkQueue", () -> {
+            int queued = 0, maxQueued = 0;
+            long pending = 0;
+            for (Player player : BlockGameServer.getInstance().getPlayers().values()) {
+                queued += player.chunkQueueDepth;
+                maxQueued = Math.max(maxQueued, player.chunkQueueDepth);
+                pending += player.getPendingBytes();
+            }
+            return String.format("queued=%d maxQueued=%d pending=%dKB", queued, maxQueued, pending / 1024);
+        });
+    }
+
+    private static final AtomicInteger nextEntityId = new AtomicInteger(1);
+
     @Getter
     private final Channel channel;
 
+    // Identifies the player to other clients in entity packets
+    @Getter
+    private final int entityId = nextEntityId.getAndIncrement();
+
     @Getter @Setter
     public boolean forceUpdate;
 
@@ -27,14 +62,163 @@ public class Player {
     @Getter @Setter
     public Vector3f position;
 
+    // When the client's last position was applied, see PositionPacket
+    @Getter @Setter
+    private long lastMoveNanos;
+
+    // Protocol.CAP_* flags sent in the ConnectPacket
+    @Getter @Setter
+    private int capabilities;
+
+    // Written to since the last flush
+    private volatile boolean unflushed;
+
+    // Chunks sent to the player
     @Getter
-    private List<World.ChunkPos> loadedChunks = new ArrayList<>();
+    private Set<World.ChunkPos> loadedChunks = new HashSet<>();
+
+    // Chunks for this tick, written after everything else at the flush. Body is set for frames
+    // sent from a file, whose encoded part is the header with the length already in it.
+    private record QueuedChunk(ByteBuf encoded, FileRegion body) { }
+    private final ArrayDeque<QueuedChunk> chunkLane = new ArrayDeque<>();
+    private long chunkLaneBytes;
+    // Where the lane's chunks are, other players standing in them are spawned after the flush
+    private final Set<World.ChunkPos> chunkLanePositions = new HashSet<>();
+
+    // Chunks in view still waiting to be sent, see World#update
+    @Getter @Setter
+    private int chunkQueueDepth;
+
+    // Set on admission, cleared once everything in view has been sent the first time or the
+    // AdmissionController gives up waiting
+    @Getter @Setter
+    private boolean joining;
+    @Getter @Setter
+    private long joiningSince;
+
+    // Chunk radius sent to this player, and what the connection looked like when it was last
+    // sized, see ViewDistanceController
+    @Getter @Setter
+    private int viewDistance;
+    @Getter @Setter
+    private long viewDistanceBytesOut;
+    @Getter @Setter
+    private long viewDistancePending;
 
     public Player(Channel channel) {
         this.channel = channel;
     }
 
+    /**
+     * Queue a packet, it goes out with the next {@link #flush()} unless it's urgent
+     */
     public void sendPacket(BlockGamePacket blockGamePacket) {
         blockGamePacket.write(channel);
+        writes.increment();
+        unflushed = true;
+    }
+
+    /**
+     * Queue an already encoded packet, it goes out with the next {@link #flush()}
+     * @param encoded The packet bytes, ownership passes to the channel
+     */
+    public void send(ByteBuf encoded) {
+        channel.write(encoded);
+        writes.increment();
+        unflushed = true;
+    }
+
+    /**
+     * Queue an encoded chunk. Chunks are held until {@link #flush()} so everything else sent
+     * this tick goes out ahead of them.
+     * @param pos The chunk's position
+     * @param encoded The packet bytes, ownership passes to the player
+     */
+    public void sendChunk(World.ChunkPos pos, ByteBuf encoded) {
+        chunkLane.add(new QueuedChunk(encoded, null));
+        chunkLanePositions.add(pos);
+        chunkLaneBytes += encoded.readableBytes();
+        unflushed = true;
+    }
+
+    /**
+     * Queue a chunk frame that already has its length, with a file region for its body. Like
+     * {@link #sendChunk(World.ChunkPos, ByteBuf)} it's held until the flush, then written below the
+     * prepender so it's sent as is.
+     * @param pos The chunk's position
+     * @param header The length prefix and anything before the body, ownership passes to the player
+     * @param body The rest of the frame, ownership passes to the player
+     */
+    public void sendChunkFile(World.ChunkPos pos, ByteBuf header, FileRegion body) {
+        chunkLane.add(new QueuedChunk(header, body));
+        chunkLanePositions.add(pos);
+        chunkLaneBytes += header.readableBytes() + body.count();
+        unflushed = true;
+    }
+
+    /**
+     * Whether a chunk is held in this tick's lane, so the player doesn't have it until the flush
+     * @param pos The chunk's position
+     */
+    public boolean isChunkInLane(World.ChunkPos pos) {
+        return chunkLanePositions.contains(pos);
+    }
+
+    /**
+     * Whether another chunk can be queued this tick. Chunks only go out while little is waiting to
+     * reach the socket, so updates sent next tick don't sit behind megabytes of chunk data. Chunks
+     * sent from region files count too, FrameSizeEstimator sizes their file regions.
+     */
+    public boolean hasChunkRoom() {
+        return channel.isWritable() && getPendingBytes() + chunkLaneBytes < BlockGameServer.getInstance().getConfig().getChunkLaneBytes();
+    }
+
+    /**
+     * Flush everything queued this tick in one go, chunks last
+     */
+    public void flush() {
+        if (!unflushed) return;
+        unflushed = false;
+
+        QueuedChunk chunk;
+        while ((chunk = chunkLane.poll()) != null) {
+            if (chunk.body() == null) {
+                channel.write(chunk.encoded(), channel.voidPromise());
+            } else {
+                ChannelHandlerContext ctx = channel.pipeline().context("prepender");
+                if (ctx == null) { // channel's gone
+                    chunk.encoded().release();
+                    chunk.body().release();
+                    continue;
+                }
+                // Counted here rather than when queued, the same moment it shows up as pending
+                NetworkMetricsHandler.recordOut(channel, chunk.encoded().getInt(chunk.encoded().readerIndex() + 4),
+                        chunk.encoded().readableBytes() + (int) chunk.body().count());
+                ctx.write(chunk.encoded(), ctx.voidPromise());
+                ctx.write(chunk.body(), ctx.voidPromise());
+            }
+            writes.increment();
+        }
+        chunkLaneBytes = 0;
+        chunkLanePositions.clear();
+
+        channel.flush();
+        flushes.increment();
+    }
+
+    /**
+     * Bytes written to the channel that haven't reached the socket yet
+     */
+    public long getPendingBytes() {
+        ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+        return buffer == null ? 0 : buffer.totalPendingWriteBytes();
+    }
+
+    /**
+     * Did the client advertise a capability when connecting
+     * @param capability A Protocol.CAP_* flag
+     */
+    public boolean hasCapability(int capability) {
+        return (capabilities & capability) != 0;
     }
 }
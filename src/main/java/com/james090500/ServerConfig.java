@@ -0,0 +1,171 @@
+package com.james090500;
+
+import lombok.Getter;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Properties;
+
+/**
+ * Settings from server.properties. Missing keys take their default and a missing file is
+ * written out with every default so there's something to edit.
+ */
+@Getter
+public class ServerConfig {
+
+    private int port = 28004;
+
+    // Seed for a newly created world, 0 for a random one
+    private int worldSeed = 0;
+
+    // Record inbound traffic to this file for replaying later (see TraceRecorder), empty for off
+    private String traceFile = "";
+
+    // auto, io_uring, epoll or nio. auto picks the best the host supports.
+    private String transport = "auto";
+
+    // Socket options, 0 leaves the OS default
+    private boolean tcpNoDelay = true;
+    private int sendBufferSize = 0;
+    private int receiveBufferSize = 0;
+
+    // A channel stops taking chunks once this much is waiting to reach the socket, and takes them
+    // again once it drains below the low mark
+    private int writeBufferLowWaterMark = 1024 * 1024;
+    private int writeBufferHighWaterMark = 2 * 1024 * 1024;
+
+    // Chunks are only sent to a player while less than this is waiting to reach their socket, so
+    // block and entity updates never queue behind more chunk data than this
+    private int chunkLaneBytes = 256 * 1024;
+
+    // Inbound commands a connection can have waiting for the tick, how many the tick runs per
+    // connection, and what to do when a client fills its queue: kick or drop
+    private int inboundQueueSize = 256;
+    private int inboundBudget = 64;
+    private String inboundOverflow = "kick";
+
+    // Chunk radius sent to players. Each player starts at the minimum and grows towards the maximum
+    // as fast as their connection and the tick allow, see ViewDistanceController
+    private int minViewDistance = 4;
+    private int viewDistance = 16;
+
+    // Fastest a player may move in blocks per second, faster moves are clamped
+    private int maxMoveSpeed = 40;
+
+    // Players still receiving their first chunks at once, and the worldgen backlog past which nobody
+    // else is let in. The rest wait in the join queue, see AdmissionController
+    private int maxJoining = 4;
+    private int maxWorldgenBacklog = 256;
+
+    // Per connection limits on inbound packets, checked before they're decoded, as comma separated
+    // packet:rate/burst where rate is per second (see RateLimiter). Empty for none. What to do with
+    // a packet over the limit: drop or kick
+    private String rateLimits = "BLOCK_UPDATE:20/40,POSITION:30/60,CHUNK_HASHES:1/4";
+    private String rateLimitAction = "drop";
+
+    /**
+     * Load the config
+     * @param file The properties file
+     * @return The config, defaults for anything missing or invalid
+     */
+    public static ServerConfig load(File file) {
+        ServerConfig config = new ServerConfig();
+        Properties properties = new Properties();
+
+        if (file.exists()) {
+            try (Reader reader = new FileReader(file)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                BlockGameServer.getLogger().warning("Failed to read " + file + ", using defaults: " + e.getMessage());
+            }
+        }
+
+        config.port = getInt(properties, "port", config.port);
+        config.worldSeed = getInt(properties, "world-seed", config.worldSeed);
+        config.traceFile = properties.getProperty("trace-file", config.traceFile).trim();
+        config.transport = properties.getProperty("transport", config.transport).trim().toLowerCase();
+        config.tcpNoDelay = Boolean.parseBoolean(properties.getProperty("tcp-no-delay", String.valueOf(config.tcpNoDelay)).trim());
+        config.sendBufferSize = getInt(properties, "send-buffer-size", config.sendBufferSize);
+        config.receiveBufferSize = getInt(properties, "receive-buffer-size", config.receiveBufferSize);
+        config.writeBufferLowWaterMark = getInt(properties, "write-buffer-low-water-mark", config.writeBufferLowWaterMark);
+        config.writeBufferHighWaterMark = getInt(properties, "write-buffer-high-water-mark", config.writeBufferHighWaterMark);
+        config.chunkLaneBytes = Math.max(1, getInt(properties, "chunk-lane-bytes", config.chunkLaneBytes));
+        config.inboundQueueSize = Math.max(1, getInt(properties, "inbound-queue-size", config.inboundQueueSize));
+        config.inboundBudget = Math.max(1, getInt(properties, "inbound-budget", config.inboundBudget));
+        config.inboundOverflow = properties.getProperty("inbound-overflow", config.inboundOverflow).trim().toLowerCase();
+        config.minViewDistance = Math.max(1, getInt(properties, "min-view-distance", config.minViewDistance));
+        config.viewDistance = Math.max(1, getInt(properties, "view-distance", config.viewDistance));
+        config.rateLimits = properties.getProperty("rate-limits", config.rateLimits).trim();
+        config.rateLimitAction = properties.getProperty("rate-limit-action", config.rateLimitAction).trim().toLowerCase();
+        config.maxMoveSpeed = Math.max(1, getInt(properties, "max-move-speed", config.maxMoveSpeed));
+        config.maxJoining = Math.max(1, getInt(properties, "max-joining", config.maxJoining));
+        config.maxWorldgenBacklog = Math.max(1, getInt(properties, "max-worldgen-backlog", config.maxWorldgenBacklog));
+
+        if (!config.inboundOverflow.equals("kick") && !config.inboundOverflow.equals("drop")) {
+            BlockGameServer.getLogger().warning("Invalid inbound-overflow '" + config.inboundOverflow + "', using kick");
+            config.inboundOverflow = "kick";
+        }
+        if (!config.rateLimitAction.equals("kick") && !config.rateLimitAction.equals("drop")) {
+            BlockGameServer.getLogger().warning("Invalid rate-limit-action '" + config.rateLimitAction + "', using drop");
+            config.rateLimitAction = "drop";
+        }
+        if (config.writeBufferLowWaterMark > config.writeBufferHighWaterMark) {
+            BlockGameServer.getLogger().warning("write-buffer-low-water-mark is above the high mark, using the high mark for both");
+            config.writeBufferLowWaterMark = config.writeBufferHighWaterMark;
+        }
+        if (config.minViewDistance > config.viewDistance) {
+            BlockGameServer.getLogger().warning("min-view-distance is above view-distance, using view-distance for both");
+            config.minViewDistance = config.viewDistance;
+        }
+
+        if (!file.exists()) {
+            config.save(file);
+        }
+        return config;
+    }
+
+    private void save(File file) {
+        Properties properties = new Properties();
+        properties.setProperty("port", String.valueOf(port));
+        properties.setProperty("world-seed", String.valueOf(worldSeed));
+        properties.setProperty("trace-file", traceFile);
+        properties.setProperty("transport", transport);
+        properties.setProperty("tcp-no-delay", String.valueOf(tcpNoDelay));
+        properties.setProperty("send-buffer-size", String.valueOf(sendBufferSize));
+        properties.setProperty("receive-buffer-size", String.valueOf(receiveBufferSize));
+        properties.setProperty("write-buffer-low-water-mark", String.valueOf(writeBufferLowWaterMark));
+        properties.setProperty("write-buffer-high-water-mark", String.valueOf(writeBufferHighWaterMark));
+        properties.setProperty("chunk-lane-bytes", String.valueOf(chunkLaneBytes));
+        properties.setProperty("inbound-queue-size", String.valueOf(inboundQueueSize));
+        properties.setProperty("inbound-budget", String.valueOf(inboundBudget));
+        properties.setProperty("inbound-overflow", inboundOverflow);
+        properties.setProperty("min-view-distance", String.valueOf(minViewDistance));
+        properties.setProperty("view-distance", String.valueOf(viewDistance));
+        properties.setProperty("rate-limits", rateLimits);
+        properties.setProperty("rate-limit-action", rateLimitAction);
+        properties.setProperty("max-move-speed", String.valueOf(maxMoveSpeed));
+        properties.setProperty("max-joining", String.valueOf(maxJoining));
+        properties.setProperty("max-worldgen-backlog", String.valueOf(maxWorldgenBacklog));
+
+        try (Writer writer = new FileWriter(file)) {
+            properties.store(writer, "BlockGame server settings");
+        } catch (IOException e) {
+            BlockGameServer.getLogger().warning("Failed to write " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static int getInt(Properties properties, String key, int def) {
+        String value = properties.getProperty(key);
+        if (value == null) return def;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            BlockGameServer.getLogger().warning("Invalid " + key + " '" + value + "', using " + def);
+            return def;
+        }
+    }
+}
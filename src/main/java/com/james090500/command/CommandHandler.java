@@ -26,6 +26,8 @@ public class CommandHandler {
         }).start();
 
         registerCommand(new ShutDownServerCommand());
+        registerCommand(new MetricsCommand());
+        registerCommand(new NetStatsCommand());
     }
 
     private void registerCommand(Command command) {
@@ -0,0 +1,16 @@
+package com.james090500.command;
+
+import com.james090500.BlockGameServer;
+import com.james090500.utils.Metrics;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+
+public class MetricsCommand implements Command {
+
+    public LiteralArgumentBuilder<CommandSource> onCommand() {
+        return LiteralArgumentBuilder.<CommandSource>literal("metrics")
+                .executes(c -> {
+                    Metrics.snapshot().forEach((name, value) -> BlockGameServer.getLogger().info(name + ": " + value));
+                    return 1;
+                });
+    }
+}
@@ -0,0 +1,77 @@
+package com.james090500.command;
+
+import com.james090500.BlockGameServer;
+import com.james090500.Player;
+import com.james090500.network.Connection;
+import com.james090500.network.NetworkMetricsHandler;
+import com.james090500.network.Protocol;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import io.netty.channel.ChannelOutboundBuffer;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class NetStatsCommand implements Command {
+
+    // Connections listed, busiest first
+    private static final int TOP_CONNECTIONS = 10;
+
+    private record ConnectionStats(SocketAddress address, long pending, boolean writable, long bytesIn, long bytesOut,
+                                   int queued, int chunkQueue) { }
+
+    public LiteralArgumentBuilder<CommandSource> onCommand() {
+        return LiteralArgumentBuilder.<CommandSource>literal("netstats")
+                .executes(c -> {
+                    Logger logger = BlockGameServer.getLogger();
+
+                    long totalOut = 0;
+                    for (int id = 0; id <= NetworkMetricsHandler.getMaxId(); id++) {
+                        totalOut += NetworkMetricsHandler.getBytesOut(id);
+                    }
+
+                    logger.info(String.format("%-20s %10s %10s %10s %10s %6s", "packet", "in", "inKB", "out", "outKB", "out%"));
+                    for (int id = 0; id <= NetworkMetricsHandler.getMaxId(); id++) {
+                        long packetsIn = NetworkMetricsHandler.getPacketsIn(id);
+                        long packetsOut = NetworkMetricsHandler.getPacketsOut(id);
+                        if (packetsIn == 0 && packetsOut == 0) continue;
+
+                        long bytesOut = NetworkMetricsHandler.getBytesOut(id);
+                        logger.info(String.format("%-20s %10d %10d %10d %10d %5.1f%%",
+                                Protocol.name(id),
+                                packetsIn, NetworkMetricsHandler.getBytesIn(id) / 1024,
+                                packetsOut, bytesOut / 1024,
+                                totalOut == 0 ? 0 : bytesOut * 100.0 / totalOut));
+                    }
+                    logger.info("write latency: " + NetworkMetricsHandler.getWriteLatency());
+
+                    // Read each connection once, the event loops keep changing these while we sort
+                    List<ConnectionStats> connections = new ArrayList<>();
+                    for (Connection connection : Connection.getConnections()) {
+                        Player player = connection.getPlayer();
+                        connections.add(new ConnectionStats(connection.getChannel().remoteAddress(),
+                                pendingBytes(connection),
+                                connection.getChannel().isWritable(),
+                                connection.getBytesIn(),
+                                connection.getBytesOut(),
+                                connection.getQueued(),
+                                player == null ? 0 : player.getChunkQueueDepth()));
+                    }
+                    connections.sort(Comparator.comparingLong(ConnectionStats::pending).reversed());
+                    logger.info(connections.size() + " connections");
+                    for (ConnectionStats stats : connections.subList(0, Math.min(TOP_CONNECTIONS, connections.size()))) {
+                        logger.info(String.format("  %s pending=%dKB writable=%b inKB=%d outKB=%d queued=%d chunkQueue=%d",
+                                stats.address(), stats.pending() / 1024, stats.writable(), stats.bytesIn() / 1024,
+                                stats.bytesOut() / 1024, stats.queued(), stats.chunkQueue()));
+                    }
+                    return 1;
+                });
+    }
+
+    private static long pendingBytes(Connection connection) {
+        ChannelOutboundBuffer buffer = connection.getChannel().unsafe().outboundBuffer();
+        return buffer == null ? 0 : buffer.totalPendingWriteBytes();
+    }
+}
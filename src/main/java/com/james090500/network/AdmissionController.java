@@ -0,0 +1,148 @@
+package com.james090500.network;
+
+import com.james090500.BlockGameServer;
+import com.james090500.Player;
+import com.james090500.ServerConfig;
+import com.james090500.network.packets.JoinQueuePacket;
+import com.james090500.utils.Metrics;
+import com.james090500.utils.ThreadUtil;
+import com.james090500.utils.TickStats;
+import org.joml.Vector3f;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Lets players in a few at a time so a crowd joining at once, like after a restart, doesn't stall
+ * the tick with everyone's chunks. Connecting clients wait in a queue, and are told their place
+ * whenever it changes. The head of the queue gets in while fewer than max-joining players are still
+ * receiving their first chunks (for up to 10 seconds each), ticks have headroom and worldgen isn't backed up, or when nobody
+ * else is joining.
+ *
+ * Tick thread only.
+ */
+public class AdmissionController {
+
+    // Only admit while ticks take less than this share of the budget
+    private static final double MAX_TICK_LOAD = 0.8;
+    // Stop counting a player as joining after this long, so clients that never read their chunks
+    // can't hold every slot
+    private static final long MAX_JOINING_NANOS = 10_000_000_000L;
+
+    private record Request(Connection connection, int capabilities, long since) { }
+
+    private final ArrayDeque<Request> queue = new ArrayDeque<>();
+    private final int maxJoining;
+    private final int maxWorldgenBacklog;
+
+    // Whether anyone's place changed since positions were last sent
+    private boolean moved = false;
+
+    private long admitted = 0;
+    private long waitedNanos = 0;
+    private long timedOut = 0;
+
+    public AdmissionController(ServerConfig config) {
+        this.maxJoining = config.getMaxJoining();
+        this.maxWorldgenBacklog = config.getMaxWorldgenBacklog();
+
+        Metrics.register("net.joinQueue", () -> String.format("queued=%d joining=%d admitted=%d avgWait=%.0fms timedOut=%d",
+                queue.size(), countJoining(), admitted, admitted == 0 ? 0.0 : waitedNanos / 1e6 / admitted, timedOut));
+    }
+
+    /**
+     * Queue a connection that's sent its ConnectPacket
+     * @param connection The connection
+     * @param capabilities The Protocol.CAP_* flags it sent
+     */
+    public void request(Connection connection, int capabilities) {
+        if (connection.getPlayer() != null) return; // already in
+        for (Request request : queue) {
+            if (request.connection() == connection) return;
+        }
+
+        queue.add(new Request(connection, capabilities, System.nanoTime()));
+        new JoinQueuePacket(queue.size(), queue.size()).write(connection.getChannel());
+    }
+
+    /**
+     * Forget a connection that's gone while waiting
+     */
+    public void remove(Connection connection) {
+        if (queue.removeIf(request -> request.connection() == connection)) {
+            moved = true;
+        }
+    }
+
+    /**
+     * Let in whoever there's room for, then tell the rest where they are
+     */
+    public void tick() {
+        expireJoining();
+        int joining = countJoining();
+        // Under load still let one in at a time, or a busy server would never admit anyone
+        while (!queue.isEmpty() && joining < maxJoining && (joining == 0 || hasHeadroom())) {
+            Request request = queue.poll();
+            moved = true;
+            if (!request.connection().getChannel().isActive()) continue;
+
+            admit(request);
+            joining++;
+        }
+
+        if (moved) {
+            moved = false;
+            int position = 1;
+            for (Request request : queue) {
+                new JoinQueuePacket(position++, queue.size()).write(request.connection().getChannel());
+            }
+        }
+    }
+
+    private boolean hasHeadroom() {
+        return BlockGameServer.getInstance().getTickStats().getRecentNanos() < TickStats.TICK_NANOS * MAX_TICK_LOAD
+                && ThreadUtil.getBacklog("worldGen") < maxWorldgenBacklog;
+    }
+
+    private void admit(Request request) {
+        Connection connection = request.connection();
+        Player player = new Player(connection.getChannel());
+        player.setCapabilities(request.capabilities());
+        player.setForceUpdate(true);
+        player.setJoining(true);
+        player.setJoiningSince(System.nanoTime());
+        player.setViewDistance(BlockGameServer.getInstance().getConfig().getMinViewDistance());
+        player.setPosition(new Vector3f(0, 100, 0));
+        connection.setPlayer(player);
+        BlockGameServer.getInstance().getPlayers().put(connection.getChannel().id(), player);
+
+        // Others get a spawn once they have the player's chunk
+        BlockGameServer.getInstance().getWorld().getEntityTracker().add(player);
+        player.sendPacket(new JoinQueuePacket(0, queue.size()));
+
+        admitted++;
+        waitedNanos += System.nanoTime() - request.since();
+    }
+
+    private int countJoining() {
+        int joining = 0;
+        for (Player player : BlockGameServer.getInstance().getPlayers().values()) {
+            if (player.isJoining()) joining++;
+        }
+        return joining;
+    }
+
+    /**
+     * Stop waiting on players that have been joining too long. They keep getting their chunks, just
+     * without holding up the queue.
+     */
+    private void expireJoining() {
+        long now = System.nanoTime();
+        for (Player player : BlockGameServer.getInstance().getPlayers().values()) {
+            if (player.isJoining() && now - player.getJoiningSince() > MAX_JOINING_NANOS) {
+                player.setJoining(false);
+                timedOut++;
+            }
+        }
+    }
+}
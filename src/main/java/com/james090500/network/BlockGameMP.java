@@ -1,37 +1,47 @@
 package com.james090500.network;
 
 import com.james090500.BlockGameServer;
-import com.james090500.network.packets.*;
+import com.james090500.network.packets.BlockGamePacket;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.function.Supplier;
-
+/**
+ * Dispatches inbound frames to their packet's handler by id
+ */
+@ChannelHandler.Sharable
 public class BlockGameMP extends SimpleChannelInboundHandler<ByteBuf> {
 
-    private final Map<Integer, Supplier<BlockGamePacket>> parsers = new HashMap<>();
-    public BlockGameMP() {
-        parsers.put(1, ConnectPacket::new);
-        parsers.put(2, DisconnectPacket::new);
-        parsers.put(3, ChunkPacket::new);
-        parsers.put(4, BlockUpdatePacket::new);
-        parsers.put(5, EntityUpdatePacket::new);
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        Connection.open(ctx.channel());
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // The tick removes the player once it has run what's still queued
+        Connection.get(ctx.channel()).markClosed();
+        super.channelInactive(ctx);
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
         int packetId = msg.readInt();
-        BlockGamePacket packet = parsers.get(packetId).get();
+        BlockGamePacket packet = PacketRegistry.get(packetId);
+        if (packet == null) {
+            // Out of sync or not our protocol, nothing after this can be trusted
+            BlockGameServer.getLogger().warning(ctx.channel().remoteAddress() + " sent unknown packet " + packetId + ", disconnecting");
+            ctx.close();
+            return;
+        }
         packet.read(ctx.channel(), msg);
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        // Close the connection when an exception is raised.
-        BlockGameServer.getInstance().getPlayers().remove(ctx.channel().id());
+        // Close the connection when an exception is raised, channelInactive handles the rest
         BlockGameServer.getLogger().info(ctx.channel().remoteAddress() + " has disconnected " + cause.getLocalizedMessage());
         ctx.close();
     }
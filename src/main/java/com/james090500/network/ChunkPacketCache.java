@@ -0,0 +1,138 @@
+package com.james090500.network;
+
+import com.james090500.network.packets.AbstractPacket;
+import com.james090500.network.packets.ChunkPacket;
+import com.james090500.network.packets.CompressedChunkPacket;
+import com.james090500.utils.Metrics;
+import com.james090500.world.Chunk;
+import com.james090500.world.World;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Encoded chunk packets shared between players, so a chunk is serialized (and compressed) once
+ * rather than once per player. Entries are checked against {@link Chunk#getVersion()} and
+ * dropped least recently used first when over the byte limit.
+ *
+ * Only used from the tick thread.
+ */
+public class ChunkPacketCache {
+
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    private final Map<World.ChunkPos, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static class Entry {
+        long version;
+        ByteBuf plain;
+        ByteBuf compressed;
+    }
+
+    public ChunkPacketCache() {
+        Metrics.register("net.chunkCache", () -> {
+            long h = hits.sum();
+            long total = h + misses.sum();
+            return String.format("entries=%d size=%dKB hits=%d misses=%d hitRate=%.1f%% evictions=%d",
+                    entries.size(), bytes / 1024, h, total - h, total == 0 ? 0.0 : 100.0 * h / total, evictions.sum());
+        });
+    }
+
+    /**
+     * Get the chunk's packet, encoding it if there isn't a current copy
+     * @param pos The chunk position
+     * @param chunk The chunk
+     * @param compressed Whether the player wants the LZ4 variant
+     * @return A retained duplicate, owned by the caller and usually passed straight to the channel
+     */
+    public ByteBuf get(World.ChunkPos pos, Chunk chunk, boolean compressed) {
+        long version = chunk.getVersion();
+        Entry entry = entries.get(pos);
+        if (entry == null) {
+            entry = new Entry();
+            entry.version = version;
+            entries.put(pos, entry);
+        } else if (entry.version != version) {
+            release(entry);
+            entry.version = version;
+        }
+
+        ByteBuf buf = compressed ? entry.compressed : entry.plain;
+        if (buf != null) {
+            hits.increment();
+            return buf.retainedDuplicate();
+        }
+
+        misses.increment();
+        AbstractPacket packet = compressed
+                ? new CompressedChunkPacket(pos.x(), pos.y(), chunk.chunkData)
+                : new ChunkPacket(pos.x(), pos.y(), chunk.chunkData);
+        buf = trim(packet.encode(ByteBufAllocator.DEFAULT));
+        if (compressed) {
+            entry.compressed = buf;
+        } else {
+            entry.plain = buf;
+        }
+        bytes += buf.capacity();
+
+        // Take the duplicate before evicting, the new entry could be the one to go if it's bigger than the cache
+        ByteBuf duplicate = buf.retainedDuplicate();
+        evict();
+        return duplicate;
+    }
+
+    /**
+     * Drop every entry
+     */
+    public void clear() {
+        for (Entry entry : entries.values()) {
+            release(entry);
+        }
+        entries.clear();
+    }
+
+    /**
+     * Encoding grows the buffer well past what it ends up holding (LZ4 reserves its worst case),
+     * copy it down so the cache holds only what's sent
+     */
+    private static ByteBuf trim(ByteBuf buf) {
+        int length = buf.readableBytes();
+        if (buf.capacity() - length < 1024) return buf;
+
+        ByteBuf trimmed = ByteBufAllocator.DEFAULT.directBuffer(length, length);
+        trimmed.writeBytes(buf);
+        buf.release();
+        return trimmed;
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > MAX_BYTES && it.hasNext()) {
+            release(it.next());
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private void release(Entry entry) {
+        if (entry.plain != null) {
+            bytes -= entry.plain.capacity();
+            entry.plain.release();
+            entry.plain = null;
+        }
+        if (entry.compressed != null) {
+            bytes -= entry.compressed.capacity();
+            entry.compressed.release();
+            entry.compressed = null;
+        }
+    }
+}
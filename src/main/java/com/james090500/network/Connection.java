@@ -0,0 +1,253 @@
+package com.james090500.network;
+
+import com.james090500.BlockGameServer;
+import com.james090500.Player;
+import com.james090500.ServerConfig;
+import com.james090500.network.packets.BlockGamePacket;
+import com.james090500.utils.Metrics;
+import com.james090500.world.World;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * A client connection and its inbound command queue. The channel's event loop decodes packets
+ * into the queue (see {@link BlockGamePacket#read}) and the tick thread drains it, a limited
+ * number of commands per connection per tick so no one client can hold up the rest.
+ *
+ * The queue is a single producer, single consumer ring of fixed size int slots, a packet id and
+ * up to four arguments, so queueing allocates nothing. What happens when it's full is set by
+ * inbound-overflow in server.properties: drop the command or kick the client.
+ */
+public class Connection {
+
+    private static final AttributeKey<Connection> KEY = AttributeKey.valueOf("connection");
+    private static final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+    private static final int SLOT_SIZE = 5; // id + 4 args
+
+    private static final LongAdder dropped = new LongAdder();
+    private static final LongAdder kickedCount = new LongAdder();
+
+    static {
+        Metrics.register("net.inbound", () -> {
+            long queued = 0;
+            for (Connection connection : connections) {
+                queued += connection.getQueued();
+            }
+            return String.format("connections=%d queued=%d dropped=%d kicked=%d", connections.size(), queued, dropped.sum(), kickedCount.sum());
+        });
+    }
+
+    @Getter
+    private final Channel channel;
+
+    // Set on the tick thread once the client has sent its ConnectPacket
+    @Getter @Setter
+    private Player player;
+
+    private final int[] slots;
+    private final int capacity;
+    private final boolean kickOnOverflow;
+
+    // Next slot to read, only advanced by the tick, and next slot to write, only advanced by the event loop
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile boolean closed;
+    private volatile boolean kicked;
+
+    // Token buckets per packet id, event loop only, see RateLimiter
+    RateLimiter.Buckets rateBuckets;
+
+    // Chunks the client has cached and their hashes, see ChunkHashesPacket. Filled by the event loop
+    // and by the tick as chunks are sent, read by the tick.
+    private final Map<World.ChunkPos, Long> cachedChunks = new ConcurrentHashMap<>();
+
+    // Traffic including length prefixes, see NetworkMetricsHandler. Inbound is only counted by the
+    // event loop, outbound also by the tick for chunks sent from region files.
+    @Getter
+    private volatile long bytesIn;
+    private final LongAdder bytesOut = new LongAdder();
+
+    private Connection(Channel channel, ServerConfig config) {
+        this.channel = channel;
+        this.capacity = Integer.highestOneBit(Math.max(1, config.getInboundQueueSize() - 1)) << 1;
+        this.slots = new int[capacity * SLOT_SIZE];
+        this.kickOnOverflow = config.getInboundOverflow().equals("kick");
+    }
+
+    /**
+     * Start tracking a newly active channel
+     */
+    public static void open(Channel channel) {
+        Connection connection = new Connection(channel, BlockGameServer.getInstance().getConfig());
+        channel.attr(KEY).set(connection);
+        connections.add(connection);
+    }
+
+    /**
+     * Get a channel's connection
+     */
+    public static Connection get(Channel channel) {
+        return channel.attr(KEY).get();
+    }
+
+    /**
+     * Every open connection
+     */
+    public static Set<Connection> getConnections() {
+        return connections;
+    }
+
+    void recordIn(int bytes) {
+        bytesIn += bytes;
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    void recordOut(int bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Note that the client has a chunk cached. Ignored once the connection is at {@link Protocol#MAX_CACHED_CHUNKS}.
+     */
+    public void putCachedChunk(World.ChunkPos pos, long hash) {
+        if (cachedChunks.size() < Protocol.MAX_CACHED_CHUNKS || cachedChunks.containsKey(pos)) {
+            cachedChunks.put(pos, hash);
+        }
+    }
+
+    /**
+     * Note that the client no longer has a chunk cached
+     */
+    public void removeCachedChunk(World.ChunkPos pos) {
+        cachedChunks.remove(pos);
+    }
+
+    /**
+     * Whether the client has this exact chunk cached
+     */
+    public boolean hasCachedChunk(World.ChunkPos pos, long hash) {
+        Long cached = cachedChunks.get(pos);
+        return cached != null && cached == hash;
+    }
+
+    /**
+     * Commands waiting for the tick
+     */
+    public int getQueued() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Queue a command for the tick. Event loop only.
+     * @param id The packet id, its handler runs the command
+     * @return false if the queue was full
+     */
+    public boolean offer(int id, int a, int b, int c, int d) {
+        if (kicked) return false;
+
+        long t = tail.get();
+        if (t - head.get() >= capacity) {
+            if (kickOnOverflow) {
+                kick("is sending too fast");
+            } else {
+                dropped.increment();
+            }
+            return false;
+        }
+
+        int i = (int) (t & (capacity - 1)) * SLOT_SIZE;
+        slots[i] = id;
+        slots[i + 1] = a;
+        slots[i + 2] = b;
+        slots[i + 3] = c;
+        slots[i + 4] = d;
+        tail.lazySet(t + 1); // publishes the slot
+        return true;
+    }
+
+    /**
+     * Disconnect the client and ignore anything else it sent. Only the first call does anything,
+     * the rest of the current read still arrives afterwards.
+     * @param reason Logged after the address
+     */
+    public void kick(String reason) {
+        if (kicked) return;
+        kicked = true;
+        kickedCount.increment();
+        BlockGameServer.getLogger().warning(channel.remoteAddress() + " " + reason + ", disconnecting");
+        channel.close();
+    }
+
+    public boolean isKicked() {
+        return kicked;
+    }
+
+    /**
+     * The channel has gone, the tick cleans up after the queue is drained
+     */
+    public void markClosed() {
+        this.closed = true;
+    }
+
+    /**
+     * Remove the player from the world if they're in it, and from everyone else's view
+     */
+    public void removePlayer() {
+        if (player == null) return;
+
+        BlockGameServer.getInstance().getPlayers().remove(channel.id());
+        BlockGameServer.getInstance().getWorld().removeWatcher(player);
+        BlockGameServer.getInstance().getWorld().getEntityTracker().remove(player);
+        player = null;
+    }
+
+    /**
+     * Run queued commands for every connection, and drop closed ones. Tick thread only.
+     * @param budget The most commands to run per connection
+     */
+    public static void drainAll(int budget) {
+        for (Connection connection : connections) {
+            if (connection.kicked) {
+                // Don't run anything from a client we've thrown off
+                connection.head.lazySet(connection.tail.get());
+            } else {
+                connection.drain(budget);
+            }
+
+            if (connection.closed && connection.head.get() == connection.tail.get()) {
+                BlockGameServer.getInstance().getAdmissionController().remove(connection);
+                connection.removePlayer();
+                connections.remove(connection);
+            }
+        }
+    }
+
+    private void drain(int budget) {
+        long h = head.get();
+        long t = tail.get();
+        for (int n = 0; h < t && n < budget; n++, h++) {
+            int i = (int) (h & (capacity - 1)) * SLOT_SIZE;
+            try {
+                PacketRegistry.get(slots[i]).handle(this, slots[i + 1], slots[i + 2], slots[i + 3], slots[i + 4]);
+            } catch (RuntimeException e) {
+                // Skip it rather than retrying the same command every tick
+                BlockGameServer.getLogger().log(Level.SEVERE, "Failed to handle packet " + slots[i] + " from " + channel.remoteAddress(), e);
+            }
+        }
+        head.lazySet(h); // frees the slots for the event loop
+    }
+}
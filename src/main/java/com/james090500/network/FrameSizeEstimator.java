@@ -0,0 +1,33 @@
+package com.james090500.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.FileRegion;
+import io.netty.channel.MessageSizeEstimator;
+
+/**
+ * Sizes outbound messages for the write buffer water marks and pending byte counts. Netty's default
+ * counts a {@link FileRegion} as nothing, which would hide chunks sent straight from region files
+ * (see {@link SharedFileRegion}) from every backpressure check.
+ */
+public class FrameSizeEstimator implements MessageSizeEstimator {
+
+    public static final FrameSizeEstimator INSTANCE = new FrameSizeEstimator();
+
+    // Packets not yet encoded, same as Netty's default
+    private static final int UNKNOWN_SIZE = 8;
+
+    private static final Handle HANDLE = msg -> {
+        if (msg instanceof ByteBuf buf) return buf.readableBytes();
+        if (msg instanceof ByteBufHolder holder) return holder.content().readableBytes();
+        if (msg instanceof FileRegion region) return (int) Math.min(Integer.MAX_VALUE, region.count());
+        return UNKNOWN_SIZE;
+    };
+
+    private FrameSizeEstimator() {}
+
+    @Override
+    public Handle newHandle() {
+        return HANDLE;
+    }
+}
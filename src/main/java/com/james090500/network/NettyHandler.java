@@ -1,32 +1,64 @@
 package com.james090500.network;
 
 import com.james090500.BlockGameServer;
+import com.james090500.ServerConfig;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.MultiThreadIoEventLoopGroup;
-import io.netty.channel.nio.NioIoHandler;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.WriteBufferWaterMark;
+
+import java.io.File;
+import java.io.IOException;
 
 public class NettyHandler {
 
-    EventLoopGroup bossGroup = new MultiThreadIoEventLoopGroup(NioIoHandler.newFactory());
-    EventLoopGroup workerGroup = new MultiThreadIoEventLoopGroup(NioIoHandler.newFactory());
+    private final ServerConfig config;
+    private final Transport transport;
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+    private final TraceRecorder traceRecorder;
+    private final RateLimiter rateLimiter;
 
-    private final int port;
+    public NettyHandler(ServerConfig config) {
+        this.config = config;
+        this.transport = Transport.select(config.getTransport());
+        this.bossGroup = new MultiThreadIoEventLoopGroup(1, transport.newFactory());
+        this.workerGroup = new MultiThreadIoEventLoopGroup(transport.newFactory());
+        this.traceRecorder = createTraceRecorder(config.getTraceFile());
+        this.rateLimiter = RateLimiter.create(config);
+    }
 
-    public NettyHandler(int port) {
-        this.port = port;
+    private static TraceRecorder createTraceRecorder(String file) {
+        if (file.isEmpty()) return null;
+        try {
+            return new TraceRecorder(new File(file));
+        } catch (IOException e) {
+            BlockGameServer.getLogger().severe("Can't record traffic to " + file + ": " + e.getMessage());
+            return null;
+        }
     }
 
     public void run() {
-
+        BlockGameServer.getLogger().info("Using " + transport.getName() + " transport");
 
         ServerBootstrap bootstrap = new ServerBootstrap()
                 .group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
-                .childHandler(new NettyInitializer());
+                .channel(transport.getServerChannel())
+                .childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
+                .childOption(ChannelOption.MESSAGE_SIZE_ESTIMATOR, FrameSizeEstimator.INSTANCE)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        new WriteBufferWaterMark(config.getWriteBufferLowWaterMark(), config.getWriteBufferHighWaterMark()))
+                .childHandler(new NettyInitializer(traceRecorder, rateLimiter));
+        if (config.getSendBufferSize() > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+        }
+        if (config.getReceiveBufferSize() > 0) {
+            bootstrap.childOption(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+        }
 
+        int port = config.getPort();
         ChannelFuture bindFuture = bootstrap.bind(port);
         bindFuture.addListener((ChannelFuture future) -> {
             if (future.isSuccess()) {
@@ -39,7 +71,10 @@ public class NettyHandler {
     }
 
     public void exit() {
-        workerGroup.shutdownGracefully();
+        workerGroup.shutdownGracefully().syncUninterruptibly();
         bossGroup.shutdownGracefully();
+        if (traceRecorder != null) {
+            traceRecorder.close();
+        }
     }
 }
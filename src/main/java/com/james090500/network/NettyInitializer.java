@@ -6,11 +6,33 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.flush.FlushConsolidationHandler;
 
 public class NettyInitializer extends ChannelInitializer<SocketChannel> {
+
+    // Stateless, shared by every channel
+    private static final LengthFieldPrepender PREPENDER = new LengthFieldPrepender(4);
+    private static final PacketEncoder ENCODER = new PacketEncoder();
+    private static final BlockGameMP HANDLER = new BlockGameMP();
+    private static final NetworkMetricsHandler METRICS = new NetworkMetricsHandler();
+
+    // Null unless trace-file is set
+    private final TraceRecorder traceRecorder;
+    // Null unless rate-limits is set
+    private final RateLimiter rateLimiter;
+
+    public NettyInitializer(TraceRecorder traceRecorder, RateLimiter rateLimiter) {
+        this.traceRecorder = traceRecorder;
+        this.rateLimiter = rateLimiter;
+    }
+
     @Override
     protected void initChannel(SocketChannel ch) {
-        int maxFrameLength = 131_072; // 128 KiB safe cap for 76,804 byte frames
+        // 128 KiB cap, fits the largest chunk frame (raw 76,804 bytes, or LZ4's worst case for the compressed variant)
+        int maxFrameLength = Protocol.MAX_FRAME_LENGTH;
+        // Urgent packets sent while handling a read get flushed once the read is done, not one by one
+        ch.pipeline().addLast(new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true));
         ch.pipeline().addLast(
                 new LengthFieldBasedFrameDecoder(
                         maxFrameLength, // maxFrameLength
@@ -20,6 +42,19 @@ public class NettyInitializer extends ChannelInitializer<SocketChannel> {
                         4                // initialBytesToStrip (strip the length field so handler sees only payload)
                 )
         );
-        ch.pipeline().addLast(new BlockGameMP());
+        // Outbound: packets are encoded to id + payload, then the length goes in front
+        ch.pipeline().addLast("prepender", PREPENDER);
+        // Sees whole frames both ways, so it can read the packet id
+        ch.pipeline().addLast("metrics", METRICS);
+        if (rateLimiter != null) {
+            // After the metrics so what's dropped is still counted as received
+            ch.pipeline().addLast("ratelimit", rateLimiter);
+        }
+        if (traceRecorder != null) {
+            // After the limiter so the trace only holds frames the server acted on
+            ch.pipeline().addLast("trace", traceRecorder);
+        }
+        ch.pipeline().addLast("encoder", ENCODER);
+        ch.pipeline().addLast("handler", HANDLER);
     }
 }
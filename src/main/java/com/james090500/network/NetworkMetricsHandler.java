@@ -0,0 +1,115 @@
+package com.james090500.network;
+
+import com.james090500.utils.LatencyHistogram;
+import com.james090500.utils.Metrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts packets and bytes per packet id in each direction, and per connection, and samples how
+ * long writes take to reach the socket. Sits between the frame decoder/prepender and the packet
+ * codec so both directions see whole frames starting with the id. Byte counts include the length.
+ */
+@ChannelHandler.Sharable
+public class NetworkMetricsHandler extends ChannelDuplexHandler {
+
+    // Ids past this are counted together in the last slot
+    private static final int MAX_ID = 63;
+
+    // Write latency is sampled, one write in this many
+    private static final int LATENCY_SAMPLE_RATE = 16;
+
+    private static final LongAdder[] packetsIn = adders();
+    private static final LongAdder[] bytesIn = adders();
+    private static final LongAdder[] packetsOut = adders();
+    private static final LongAdder[] bytesOut = adders();
+
+    private static final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    static {
+        Metrics.register("net.packets", () -> {
+            StringBuilder sb = new StringBuilder();
+            for (int id = 0; id <= MAX_ID; id++) {
+                long out = bytesOut[id].sum();
+                long in = bytesIn[id].sum();
+                if (out == 0 && in == 0) continue;
+                if (!sb.isEmpty()) sb.append(' ');
+                sb.append(Protocol.name(id)).append("=in:").append(in / 1024).append("KB/out:").append(out / 1024).append("KB");
+            }
+            return sb.toString();
+        });
+        Metrics.register("net.writeLatency", writeLatency::toString);
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[MAX_ID + 1];
+        for (int i = 0; i < adders.length; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf frame && frame.readableBytes() >= 4) {
+            int bytes = frame.readableBytes() + 4;
+            int slot = slot(frame.getInt(frame.readerIndex()));
+            packetsIn[slot].increment();
+            bytesIn[slot].add(bytes);
+
+            Connection connection = Connection.get(ctx.channel());
+            if (connection != null) connection.recordIn(bytes);
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf frame && frame.readableBytes() >= 4) {
+            recordOut(ctx.channel(), frame.getInt(frame.readerIndex()), frame.readableBytes() + 4);
+
+            if (!promise.isVoid() && ThreadLocalRandom.current().nextInt(LATENCY_SAMPLE_RATE) == 0) {
+                long start = System.nanoTime();
+                promise.addListener(future -> {
+                    if (future.isSuccess()) writeLatency.record(System.nanoTime() - start);
+                });
+            }
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    /**
+     * Count an outbound frame written below this handler, so it doesn't pass through
+     * @param bytes The whole frame including its length
+     */
+    public static void recordOut(Channel channel, int id, int bytes) {
+        int slot = slot(id);
+        packetsOut[slot].increment();
+        bytesOut[slot].add(bytes);
+
+        Connection connection = Connection.get(channel);
+        if (connection != null) connection.recordOut(bytes);
+    }
+
+    private static int slot(int id) {
+        return id < 0 || id > MAX_ID ? MAX_ID : id;
+    }
+
+    public static long getPacketsIn(int id) { return packetsIn[slot(id)].sum(); }
+    public static long getBytesIn(int id) { return bytesIn[slot(id)].sum(); }
+    public static long getPacketsOut(int id) { return packetsOut[slot(id)].sum(); }
+    public static long getBytesOut(int id) { return bytesOut[slot(id)].sum(); }
+
+    public static int getMaxId() {
+        return MAX_ID;
+    }
+
+    public static LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+}
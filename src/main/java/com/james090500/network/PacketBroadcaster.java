@@ -0,0 +1,60 @@
+package com.james090500.network;
+
+import com.james090500.BlockGameServer;
+import com.james090500.Player;
+import com.james090500.network.packets.AbstractPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.function.Predicate;
+
+/**
+ * Send one packet to many players. The packet is encoded once and each player gets a
+ * retained duplicate of the same buffer.
+ *
+ * Call from the tick thread, it iterates the players.
+ */
+public class PacketBroadcaster {
+
+    /**
+     * Send a packet to every player
+     * @param packet The packet
+     */
+    public static void broadcast(AbstractPacket packet) {
+        broadcast(packet, player -> true);
+    }
+
+    /**
+     * Send a packet to the players matching a filter
+     * @param packet The packet
+     * @param filter Which players to send to
+     */
+    public static void broadcast(AbstractPacket packet, Predicate<Player> filter) {
+        broadcast(packet, BlockGameServer.getInstance().getPlayers().values(), filter);
+    }
+
+    /**
+     * Send a packet to some of a group of players, such as a chunk's watchers
+     * @param packet The packet
+     * @param players Who to consider
+     * @param filter Which of them to send to
+     */
+    public static void broadcast(AbstractPacket packet, Iterable<Player> players, Predicate<Player> filter) {
+        ByteBuf encoded = null;
+        try {
+            for (Player player : players) {
+                if (!filter.test(player)) continue;
+
+                // Nothing to encode if no one is listening
+                if (encoded == null) {
+                    encoded = packet.encode(ByteBufAllocator.DEFAULT);
+                }
+                player.send(encoded.retainedDuplicate());
+            }
+        } finally {
+            if (encoded != null) {
+                encoded.release();
+            }
+        }
+    }
+}
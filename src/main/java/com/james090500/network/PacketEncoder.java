@@ -0,0 +1,20 @@
+package com.james090500.network;
+
+import com.james090500.network.packets.AbstractPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+/**
+ * Writes outbound packets into a pooled buffer on the event loop. Already encoded
+ * ByteBufs (shared chunk packets, broadcasts) skip this and go straight to the prepender.
+ */
+@ChannelHandler.Sharable
+public class PacketEncoder extends MessageToByteEncoder<AbstractPacket> {
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, AbstractPacket packet, ByteBuf out) {
+        packet.encode(out);
+    }
+}
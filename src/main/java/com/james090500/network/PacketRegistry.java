@@ -0,0 +1,37 @@
+package com.james090500.network;
+
+import com.james090500.network.packets.*;
+
+/**
+ * Inbound packet handlers indexed by packet id. Each handler is one shared instance,
+ * so reads must not keep state on the packet object. Only packets clients may send are
+ * registered, anything else is an unknown id and closes the connection.
+ */
+public class PacketRegistry {
+
+    private static final BlockGamePacket[] handlers = new BlockGamePacket[Protocol.JOIN_QUEUE + 1];
+
+    static {
+        handlers[Protocol.CONNECT] = new ConnectPacket();
+        handlers[Protocol.DISCONNECT] = new DisconnectPacket();
+        handlers[Protocol.BLOCK_UPDATE] = new BlockUpdatePacket();
+        handlers[Protocol.POSITION] = new PositionPacket();
+        handlers[Protocol.CHUNK_HASHES] = new ChunkHashesPacket();
+    }
+
+    /**
+     * One past the highest packet id in either direction
+     */
+    public static int size() {
+        return handlers.length;
+    }
+
+    /**
+     * Get the handler for a packet id
+     * @param id The packet id
+     * @return The handler or null if the id is unknown
+     */
+    public static BlockGamePacket get(int id) {
+        return id >= 0 && id < handlers.length ? handlers[id] : null;
+    }
+}
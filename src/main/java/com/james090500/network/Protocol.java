@@ -0,0 +1,85 @@
+package com.james090500.network;
+
+import com.james090500.world.Chunk;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Wire protocol constants shared by the packets.
+ *
+ * Every frame is [i32 length][i32 packetId][payload], big-endian, where length covers the id and payload.
+ */
+public class Protocol {
+
+    // Packet ids
+    public static final int CONNECT = 1;
+    public static final int DISCONNECT = 2;
+    public static final int CHUNK = 3;
+    public static final int BLOCK_UPDATE = 4;
+    public static final int ENTITY_UPDATE = 5;
+    public static final int COMPRESSED_CHUNK = 6;
+    public static final int MULTI_BLOCK_CHANGE = 7;
+    public static final int POSITION = 8;
+    public static final int ENTITY_MOVES = 9;
+    public static final int CHUNK_HASHES = 10;
+    public static final int CHUNK_CACHED = 11;
+    public static final int JOIN_QUEUE = 12;
+
+    // EntityUpdatePacket actions
+    public static final int ENTITY_SPAWN = 1;
+    public static final int ENTITY_MOVE = 2;
+    public static final int ENTITY_REMOVE = 3;
+
+    // Entity positions in EntityMovesPacket are fixed point, 1/32 of a block
+    public static final int POSITION_SCALE = 32;
+
+    // Capability bits a client may send as an optional i32 in its ConnectPacket. Clients that send
+    // nothing get the original protocol.
+    public static final int CAP_LZ4_CHUNKS = 1;
+    public static final int CAP_MULTI_BLOCK = 2;
+    public static final int CAP_ENTITY_DELTAS = 4;
+    public static final int CAP_CHUNK_CACHE = 8;
+
+    // Most chunk hashes the server remembers per connection, see ChunkHashesPacket
+    public static final int MAX_CACHED_CHUNKS = 4096;
+
+    // Largest chunk frame we send: the compressed variant if LZ4 can't shrink the chunk
+    // (length, id, x, z, uncompressedLength + LZ4 worst case)
+    public static final int MAX_CHUNK_FRAME_LENGTH = 20 + LZ4Factory.fastestInstance().fastCompressor().maxCompressedLength(Chunk.DATA_LENGTH);
+
+    // Cap on any frame in either direction, clients should mirror it
+    public static final int MAX_FRAME_LENGTH = 131_072; // 128 KiB
+
+    private static final String[] NAMES = {
+            null, "CONNECT", "DISCONNECT", "CHUNK", "BLOCK_UPDATE", "ENTITY_UPDATE",
+            "COMPRESSED_CHUNK", "MULTI_BLOCK_CHANGE", "POSITION", "ENTITY_MOVES", "CHUNK_HASHES",
+            "CHUNK_CACHED", "JOIN_QUEUE"
+    };
+
+    /**
+     * Name a packet id for reports
+     */
+    public static String name(int id) {
+        return id > 0 && id < NAMES.length ? NAMES[id] : "UNKNOWN(" + id + ")";
+    }
+
+    /**
+     * Look up a packet id by name, or parse a number
+     * @return The id or -1 if it isn't one
+     */
+    public static int id(String name) {
+        for (int id = 1; id < NAMES.length; id++) {
+            if (NAMES[id].equalsIgnoreCase(name)) return id;
+        }
+        try {
+            return Integer.parseInt(name);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static {
+        if (MAX_CHUNK_FRAME_LENGTH > MAX_FRAME_LENGTH) {
+            throw new IllegalStateException("Chunk frames (" + MAX_CHUNK_FRAME_LENGTH + ") exceed the frame cap");
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.james090500.network;
+
+import com.james090500.BlockGameServer;
+import com.james090500.ServerConfig;
+import com.james090500.utils.Metrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per connection token buckets on inbound packets, by packet id. Each limited id refills at its
+ * rate up to its burst, and a frame that finds its bucket empty is dropped before it's decoded,
+ * or gets the client kicked, per rate-limit-action. Sits after the frame decoder, reading only the id.
+ */
+@ChannelHandler.Sharable
+public class RateLimiter extends ChannelInboundHandlerAdapter {
+
+    // Per packet id, 0 rate for unlimited
+    private final double[] rates;
+    private final double[] bursts;
+    private final boolean kick;
+
+    private final LongAdder[] violations;
+
+    /**
+     * A connection's buckets. Event loop only.
+     */
+    static class Buckets {
+        final double[] tokens;
+        final long[] refilled;
+
+        Buckets(double[] bursts) {
+            this.tokens = bursts.clone(); // start full
+            this.refilled = new long[bursts.length];
+            Arrays.fill(refilled, System.nanoTime());
+        }
+    }
+
+    private RateLimiter(double[] rates, double[] bursts, boolean kick) {
+        this.rates = rates;
+        this.bursts = bursts;
+        this.kick = kick;
+        this.violations = new LongAdder[rates.length];
+        for (int i = 0; i < violations.length; i++) violations[i] = new LongAdder();
+
+        Metrics.register("net.rateLimit", () -> {
+            StringBuilder sb = new StringBuilder("action=").append(kick ? "kick" : "drop");
+            for (int id = 0; id < rates.length; id++) {
+                if (rates[id] == 0) continue;
+                sb.append(' ').append(Protocol.name(id)).append('=').append(violations[id].sum());
+            }
+            return sb.toString();
+        });
+    }
+
+    /**
+     * Build the limiter from rate-limits in the config
+     * @return The limiter or null if nothing's limited
+     */
+    public static RateLimiter create(ServerConfig config) {
+        if (config.getRateLimits().isEmpty()) return null;
+
+        double[] rates = new double[PacketRegistry.size()];
+        double[] bursts = new double[rates.length];
+        boolean any = false;
+        for (String entry : config.getRateLimits().split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            try {
+                int colon = entry.indexOf(':');
+                int slash = entry.indexOf('/', colon);
+                int id = Protocol.id(entry.substring(0, colon).trim());
+                double rate = Double.parseDouble(entry.substring(colon + 1, slash < 0 ? entry.length() : slash).trim());
+                double burst = slash < 0 ? rate : Double.parseDouble(entry.substring(slash + 1).trim());
+                if (id < 0 || id >= rates.length || rate <= 0 || burst < 1) throw new IllegalArgumentException();
+
+                rates[id] = rate;
+                bursts[id] = burst;
+                any = true;
+            } catch (RuntimeException e) {
+                BlockGameServer.getLogger().warning("Invalid rate-limits entry '" + entry + "', ignoring it");
+            }
+        }
+        return any ? new RateLimiter(rates, bursts, config.getRateLimitAction().equals("kick")) : null;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf frame && frame.readableBytes() >= 4) {
+            int id = frame.getInt(frame.readerIndex());
+            if (id > 0 && id < rates.length && rates[id] > 0) {
+                Connection connection = Connection.get(ctx.channel());
+                if (connection != null && !take(connection, id)) {
+                    violations[id].increment();
+                    ReferenceCountUtil.release(msg);
+                    if (kick) connection.kick("went over the " + Protocol.name(id) + " rate limit");
+                    return;
+                }
+            }
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    private boolean take(Connection connection, int id) {
+        Buckets buckets = connection.rateBuckets;
+        if (buckets == null) {
+            buckets = connection.rateBuckets = new Buckets(bursts);
+        }
+
+        long now = System.nanoTime();
+        double tokens = Math.min(bursts[id], buckets.tokens[id] + (now - buckets.refilled[id]) / 1e9 * rates[id]);
+        buckets.refilled[id] = now;
+        if (tokens < 1) {
+            buckets.tokens[id] = tokens;
+            return false;
+        }
+        buckets.tokens[id] = tokens - 1;
+        return true;
+    }
+}
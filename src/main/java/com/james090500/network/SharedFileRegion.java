@@ -0,0 +1,22 @@
+package com.james090500.network;
+
+import io.netty.channel.DefaultFileRegion;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link DefaultFileRegion} over a file channel that stays open after the write, for sending
+ * straight out of a region file. Keeps the transports' sendfile/splice path, which only applies
+ * to DefaultFileRegion.
+ */
+public class SharedFileRegion extends DefaultFileRegion {
+
+    public SharedFileRegion(FileChannel file, long position, long count) {
+        super(file, position, count);
+    }
+
+    @Override
+    protected void deallocate() {
+        // The region owns the channel
+    }
+}
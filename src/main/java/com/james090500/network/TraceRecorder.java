@@ -0,0 +1,96 @@
+package com.james090500.network;
+
+import com.james090500.BlockGameServer;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records inbound traffic so it can be replayed against another build (see the loadtest Replay).
+ * Sits after the rate limiter, so frames it dropped aren't recorded and a replay without limits
+ * sees what the server handled, and passes everything on untouched.
+ *
+ * File: "BGTR", i32 version, then per event i64 nanos since the recording started, i32 connection,
+ * i32 length and that many bytes of frame (packet id + payload, no length). A length of -1 is a
+ * connection opening and -2 one closing, with no bytes. Big-endian.
+ */
+@ChannelHandler.Sharable
+public class TraceRecorder extends ChannelInboundHandlerAdapter {
+
+    public static final int MAGIC = 0x42475452; // BGTR
+    public static final int VERSION = 1;
+    public static final int OPEN = -1;
+    public static final int CLOSE = -2;
+
+    private static final AttributeKey<Integer> CONNECTION = AttributeKey.valueOf("traceConnection");
+
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private final long start = System.nanoTime();
+    private final DataOutputStream out;
+    private boolean failed = false;
+
+    public TraceRecorder(File file) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        BlockGameServer.getLogger().info("Recording inbound traffic to " + file);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        int connection = nextConnection.getAndIncrement();
+        ctx.channel().attr(CONNECTION).set(connection);
+        write(connection, OPEN, null);
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        write(ctx.channel().attr(CONNECTION).get(), CLOSE, null);
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf frame) {
+            write(ctx.channel().attr(CONNECTION).get(), frame.readableBytes(), frame);
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    private synchronized void write(int connection, int length, ByteBuf frame) {
+        if (failed) return;
+        try {
+            out.writeLong(System.nanoTime() - start);
+            out.writeInt(connection);
+            out.writeInt(length);
+            if (frame != null) {
+                frame.getBytes(frame.readerIndex(), out, length);
+            }
+        } catch (IOException e) {
+            failed = true;
+            BlockGameServer.getLogger().severe("Stopped recording traffic: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Flush and close the file
+     */
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            BlockGameServer.getLogger().severe("Failed to close traffic recording: " + e.getMessage());
+        }
+        failed = true;
+    }
+}
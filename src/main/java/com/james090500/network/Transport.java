@@ -0,0 +1,76 @@
+package com.james090500.network;
+
+import com.james090500.BlockGameServer;
+import io.netty.channel.IoHandlerFactory;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollIoHandler;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.uring.IoUring;
+import io.netty.channel.uring.IoUringIoHandler;
+import io.netty.channel.uring.IoUringServerSocketChannel;
+import lombok.Getter;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The Netty transports we can run on, best first. The native ones need Linux and their
+ * native library to load, NIO works everywhere.
+ */
+public enum Transport {
+    IO_URING("io_uring", IoUring::isAvailable, IoUringIoHandler::newFactory, IoUringServerSocketChannel.class),
+    EPOLL("epoll", Epoll::isAvailable, EpollIoHandler::newFactory, EpollServerSocketChannel.class),
+    NIO("nio", () -> true, NioIoHandler::newFactory, NioServerSocketChannel.class);
+
+    @Getter
+    private final String name;
+    private final BooleanSupplier available;
+    private final Supplier<IoHandlerFactory> factory;
+    @Getter
+    private final Class<? extends ServerChannel> serverChannel;
+
+    Transport(String name, BooleanSupplier available, Supplier<IoHandlerFactory> factory, Class<? extends ServerChannel> serverChannel) {
+        this.name = name;
+        this.available = available;
+        this.factory = factory;
+        this.serverChannel = serverChannel;
+    }
+
+    public boolean isAvailable() {
+        return available.getAsBoolean();
+    }
+
+    public IoHandlerFactory newFactory() {
+        return factory.get();
+    }
+
+    /**
+     * Pick the transport for a config value
+     * @param configured auto, or a transport name
+     * @return The configured transport if the host supports it, otherwise the best one that it does
+     */
+    public static Transport select(String configured) {
+        if (!configured.equals("auto")) {
+            Transport requested = null;
+            for (Transport transport : values()) {
+                if (transport.name.equals(configured)) requested = transport;
+            }
+
+            if (requested == null) {
+                BlockGameServer.getLogger().warning("Unknown transport " + configured + ", picking one automatically");
+            } else if (!requested.isAvailable()) {
+                BlockGameServer.getLogger().warning("Transport " + configured + " isn't available on this host, picking one automatically");
+            } else {
+                return requested;
+            }
+        }
+
+        for (Transport transport : values()) {
+            if (transport.isAvailable()) return transport;
+        }
+        return NIO;
+    }
+}
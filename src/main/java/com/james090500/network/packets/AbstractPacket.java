@@ -1,24 +1,53 @@
 package com.james090500.network.packets;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 
 public abstract class AbstractPacket implements BlockGamePacket {
 
-    // default write behaviour: allocate, write id, then payload, then flush
+    // default write behaviour: hand the packet to the pipeline, PacketEncoder writes the id and payload
+    // and the LengthFieldPrepender the length. Not flushed, the tick flushes each player once at the
+    // end unless the packet is urgent.
     @Override
     public void write(Channel channel) {
-        // If you use LengthFieldPrepender in pipeline, the length will be added for you,
-        // so here we only write the id + payload.
-        ByteBuf buf = channel.alloc().buffer();
-        writePayload(buf);              // subclass writes its fields
-        channel.writeAndFlush(buf);     // ownership passed to Netty
+        if (isUrgent()) {
+            channel.writeAndFlush(this);
+        } else {
+            channel.write(this);
+        }
     }
 
-    // subclass should write only payload (no id/length)
+    /**
+     * Whether the packet should go out straight away rather than with the end of tick flush
+     */
+    public boolean isUrgent() {
+        return false;
+    }
+
+    /**
+     * Encode the packet into a new buffer, for sending the same bytes to more than one channel
+     * @param alloc The allocator to use
+     * @return The encoded packet, owned by the caller
+     */
+    public ByteBuf encode(ByteBufAllocator alloc) {
+        ByteBuf buf = alloc.buffer();
+        encode(buf);
+        return buf;
+    }
+
+    /**
+     * Write the packet id and payload, the length is left to the LengthFieldPrepender
+     * @param out The buffer to write to
+     */
+    public void encode(ByteBuf out) {
+        writePayload(out);              // subclass writes its fields
+    }
+
+    // subclass should write the id and payload (no length)
     protected abstract void writePayload(ByteBuf out);
 
-    // default read can be left abstract or provided here
+    // default read can be left abstract or provided here, see BlockGamePacket#read
     @Override
     public abstract void read(Channel channel, ByteBuf msg);
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.james090500.network.packets;
 
+import com.james090500.network.Connection;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 
@@ -7,5 +8,20 @@ public interface BlockGamePacket {
 
     void write(Channel channel);
 
+    /**
+     * Decode an inbound packet on the channel's event loop, queueing anything that touches the
+     * world or players for {@link #handle} (see Connection#offer). One instance handles every
+     * channel's packets of its id (see PacketRegistry), so read into locals rather than fields.
+     * @param channel The channel it came from
+     * @param msg The payload, after the id
+     */
     void read(Channel channel, ByteBuf msg);
+
+    /**
+     * Run a command queued by {@link #read}, on the tick thread
+     * @param connection The connection it came from
+     */
+    default void handle(Connection connection, int a, int b, int c, int d) {
+
+    }
 }
@@ -1,7 +1,8 @@
 package com.james090500.network.packets;
 
 import com.james090500.BlockGameServer;
-import com.james090500.utils.ThreadUtil;
+import com.james090500.network.Connection;
+import com.james090500.network.Protocol;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 
@@ -22,8 +23,7 @@ public class BlockUpdatePacket extends AbstractPacket {
 
     @Override
     protected void writePayload(ByteBuf out) {
-        out.writeInt(17); //id, x, y, z, block
-        out.writeInt(4);
+        out.writeInt(Protocol.BLOCK_UPDATE);
         out.writeInt(x); //X
         out.writeInt(y); //Y
         out.writeInt(z); //Z
@@ -32,19 +32,14 @@ public class BlockUpdatePacket extends AbstractPacket {
 
     @Override
     public void read(Channel channel, ByteBuf msg) {
-        this.x = msg.readInt();
-        this.y = msg.readInt();
-        this.z = msg.readInt();
-        this.block = msg.readByte();
-
-        ThreadUtil.getMainQueue().add(() -> {
-            BlockGameServer.getInstance().getWorld().setBlock(x, y, z, block);
-        });
-
-        BlockGameServer.getInstance().getPlayers().forEach((channelId, pl) -> {
-            if(!channelId.equals(channel.id())) {
-                pl.sendPacket(new BlockUpdatePacket(x, y, z, block));
-            }
-        });
+        Connection.get(channel).offer(Protocol.BLOCK_UPDATE, msg.readInt(), msg.readInt(), msg.readInt(), msg.readByte());
+    }
+
+    @Override
+    public void handle(Connection connection, int x, int y, int z, int block) {
+        if (connection.getPlayer() == null) return; // not connected yet
+
+        // The world sends it on to the chunk's other watchers at the end of the tick
+        BlockGameServer.getInstance().getWorld().setBlock(x, y, z, (byte) block, connection.getPlayer());
     }
 }
@@ -0,0 +1,44 @@
+package com.james090500.network.packets;
+
+import com.james090500.network.Protocol;
+import com.james090500.utils.Metrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sent instead of a chunk the client said it has cached with the same hash, see {@link ChunkHashesPacket}.
+ * Payload: i32 x, i32 z
+ */
+public class ChunkCachedPacket extends AbstractPacket {
+
+    private static final LongAdder sent = new LongAdder();
+
+    static {
+        Metrics.register("net.clientChunkCache", () -> "reused=" + sent.sum());
+    }
+
+    private int chunkX;
+    private int chunkZ;
+
+    public ChunkCachedPacket() {}
+
+    public ChunkCachedPacket(int chunkX, int chunkZ) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+    }
+
+    @Override
+    protected void writePayload(ByteBuf out) {
+        out.writeInt(Protocol.CHUNK_CACHED);
+        out.writeInt(chunkX); //X
+        out.writeInt(chunkZ); //Z
+        sent.increment();
+    }
+
+    @Override
+    public void read(Channel channel, ByteBuf msg) {
+
+    }
+}
@@ -0,0 +1,42 @@
+package com.james090500.network.packets;
+
+import com.james090500.network.Connection;
+import com.james090500.network.Protocol;
+import com.james090500.world.World;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+
+/**
+ * Chunks the client already has cached, for clients that advertise {@link Protocol#CAP_CHUNK_CACHE}.
+ * Best sent before the ConnectPacket so the first chunks can use it. Can be sent again, entries are added,
+ * and a hash of {@link #FORGET} removes the chunk so it's sent in full next time, for when the client evicts it.
+ * The server keeps at most {@link Protocol#MAX_CACHED_CHUNKS} per connection, including the chunks it sends,
+ * and ignores new entries past that until some are forgotten.
+ * Payload: i32 count, then count x (i32 x, i32 z, i64 hash) where hash is XXH64 (seed 0) of the chunk data
+ */
+public class ChunkHashesPacket extends AbstractPacket {
+
+    // Hash meaning the client no longer has the chunk
+    public static final long FORGET = 0;
+
+    @Override
+    protected void writePayload(ByteBuf out) {
+
+    }
+
+    @Override
+    public void read(Channel channel, ByteBuf msg) {
+        // Goes straight on the connection rather than through the queue, a manifest can be thousands of chunks
+        Connection connection = Connection.get(channel);
+        int count = Math.min(msg.readInt(), msg.readableBytes() / 16);
+        for (int i = 0; i < count; i++) {
+            World.ChunkPos pos = new World.ChunkPos(msg.readInt(), msg.readInt());
+            long hash = msg.readLong();
+            if (hash == FORGET) {
+                connection.removeCachedChunk(pos);
+            } else {
+                connection.putCachedChunk(pos, hash);
+            }
+        }
+    }
+}
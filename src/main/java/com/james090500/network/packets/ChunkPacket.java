@@ -1,5 +1,6 @@
 package com.james090500.network.packets;
 
+import com.james090500.network.Protocol;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 
@@ -18,8 +19,7 @@ public class ChunkPacket extends AbstractPacket {
 
     @Override
     protected void writePayload(ByteBuf out) {
-        out.writeInt(12 + chunkData.length); //id, x, z, chunkData
-        out.writeInt(3);
+        out.writeInt(Protocol.CHUNK);
         out.writeInt(chunkX); //X
         out.writeInt(chunkZ); //Z
         out.writeBytes(chunkData); //Data
@@ -0,0 +1,103 @@
+package com.james090500.network.packets;
+
+import com.james090500.Player;
+import com.james090500.network.Protocol;
+import com.james090500.network.SharedFileRegion;
+import com.james090500.utils.Metrics;
+import com.james090500.world.Chunk;
+import com.james090500.world.Region;
+import com.james090500.world.World;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LZ4 variant of {@link ChunkPacket} for clients that advertise {@link Protocol#CAP_LZ4_CHUNKS}.
+ * Payload: i32 x, i32 z, i32 uncompressedLength, LZ4 block (rest of the frame)
+ */
+public class CompressedChunkPacket extends AbstractPacket {
+
+    private static final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+    private static final LongAdder chunks = new LongAdder();
+    private static final LongAdder rawBytes = new LongAdder();
+    private static final LongAdder wireBytes = new LongAdder();
+    private static final LongAdder stored = new LongAdder();
+
+    static {
+        Metrics.register("net.chunkCompression", () -> {
+            long raw = rawBytes.sum();
+            long wire = wireBytes.sum();
+            return String.format("chunks=%d raw=%dKB wire=%dKB saved=%.1f%% fromDisk=%d",
+                    chunks.sum(), raw / 1024, wire / 1024, raw == 0 ? 0.0 : 100.0 * (raw - wire) / raw, stored.sum());
+        });
+    }
+
+    private int chunkX;
+    private int chunkZ;
+    private byte[] chunkData;
+
+    public CompressedChunkPacket() {}
+
+    public CompressedChunkPacket(int chunkX, int chunkZ, byte[] chunkData) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.chunkData = chunkData;
+    }
+
+    @Override
+    protected void writePayload(ByteBuf out) {
+        int maxLen = compressor.maxCompressedLength(chunkData.length);
+
+        int start = out.writerIndex();
+        out.writeInt(Protocol.COMPRESSED_CHUNK);
+        out.writeInt(chunkX); //X
+        out.writeInt(chunkZ); //Z
+        out.writeInt(chunkData.length); //Uncompressed length
+
+        // Compress straight into the outbound buffer
+        out.ensureWritable(maxLen);
+        ByteBuffer dest = out.nioBuffer(out.writerIndex(), maxLen);
+        int compLen = compressor.compress(ByteBuffer.wrap(chunkData), 0, chunkData.length, dest, dest.position(), maxLen);
+        out.writerIndex(out.writerIndex() + compLen);
+
+        int frameLength = 4 + out.writerIndex() - start; // plus the length the prepender adds
+
+        chunks.increment();
+        rawBytes.add(16L + chunkData.length); // what the plain ChunkPacket frame would have been
+        wireBytes.add(frameLength);
+    }
+
+    /**
+     * Send a chunk's LZ4 block straight from its region file, no compression and no copy through the heap
+     * @param player Who to send it to
+     * @param block The stored block, see {@link Chunk#getStoredBlock()}
+     * @return The frame length
+     */
+    public static int sendStored(Player player, int chunkX, int chunkZ, Region.StoredBlock block) {
+        int frameLength = 20 + block.length();
+
+        ByteBuf header = player.getChannel().alloc().directBuffer(20, 20);
+        header.writeInt(frameLength - 4); // the prepender's skipped
+        header.writeInt(Protocol.COMPRESSED_CHUNK);
+        header.writeInt(chunkX); //X
+        header.writeInt(chunkZ); //Z
+        header.writeInt(block.uncompressedLength()); //Uncompressed length
+        player.sendChunkFile(new World.ChunkPos(chunkX, chunkZ), header, new SharedFileRegion(block.file(), block.position(), block.length()));
+
+        chunks.increment();
+        stored.increment();
+        rawBytes.add(16L + block.uncompressedLength());
+        wireBytes.add(frameLength);
+        return frameLength;
+    }
+
+    @Override
+    public void read(Channel channel, ByteBuf msg) {
+
+    }
+}
@@ -1,11 +1,10 @@
 package com.james090500.network.packets;
 
 import com.james090500.BlockGameServer;
-import com.james090500.Player;
-import com.james090500.utils.ThreadUtil;
+import com.james090500.network.Connection;
+import com.james090500.network.Protocol;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
-import org.joml.Vector3f;
 
 public class ConnectPacket implements BlockGamePacket {
 
@@ -18,16 +17,14 @@ public class ConnectPacket implements BlockGamePacket {
     public void read(Channel channel, ByteBuf msg) {
         BlockGameServer.getLogger().info(channel.remoteAddress() + " has connected");
 
-        // Load Player
-        Player player = new Player(channel);
-        player.setForceUpdate(true);
-        player.setPosition(new Vector3f(0, 100, 0));
-        ThreadUtil.getMainQueue().add(() -> BlockGameServer.getInstance().getPlayers().put(channel.id(), player));
+        // Optional capability flags, older clients send an empty payload
+        int capabilities = msg.readableBytes() >= 4 ? msg.readInt() : 0;
+        Connection.get(channel).offer(Protocol.CONNECT, capabilities, 0, 0, 0);
+    }
 
-        BlockGameServer.getInstance().getPlayers().forEach((channelId, pl) -> {
-            if(!channelId.equals(channel.id())) {
-                pl.sendPacket(new EntityUpdatePacket(1, 1, 1, 100, 1));
-            }
-        });
+    @Override
+    public void handle(Connection connection, int capabilities, int b, int c, int d) {
+        // The player is created once there's room, see AdmissionController
+        BlockGameServer.getInstance().getAdmissionController().request(connection, capabilities);
     }
 }
@@ -1,11 +1,10 @@
 package com.james090500.network.packets;
 
 import com.james090500.BlockGameServer;
-import com.james090500.Player;
-import com.james090500.utils.ThreadUtil;
+import com.james090500.network.Connection;
+import com.james090500.network.Protocol;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
-import org.joml.Vector3f;
 
 public class DisconnectPacket implements BlockGamePacket {
 
@@ -17,12 +16,13 @@ public class DisconnectPacket implements BlockGamePacket {
     @Override
     public void read(Channel channel, ByteBuf msg) {
         BlockGameServer.getLogger().info(channel.remoteAddress() + " has disconnected");
-        ThreadUtil.getMainQueue().add(() -> BlockGameServer.getInstance().getPlayers().remove(channel.id()));
+        Connection.get(channel).offer(Protocol.DISCONNECT, 0, 0, 0, 0);
+    }
 
-        BlockGameServer.getInstance().getPlayers().forEach((channelId, pl) -> {
-            if(!channelId.equals(channel.id())) {
-                pl.sendPacket(new EntityUpdatePacket(1, 3, 1, 100, 1));
-            }
-        });
+    @Override
+    public void handle(Connection connection, int a, int b, int c, int d) {
+        // Might still be waiting to join
+        BlockGameServer.getInstance().getAdmissionController().remove(connection);
+        connection.removePlayer();
     }
 }
@@ -0,0 +1,40 @@
+package com.james090500.network.packets;
+
+import com.james090500.network.Protocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Every visible entity that moved this tick, for clients that advertise {@link Protocol#CAP_ENTITY_DELTAS}.
+ * Payload: i32 count, then count x (i32 entityId, i16 dx, i16 dy, i16 dz) with the deltas in
+ * 1/{@link Protocol#POSITION_SCALE} of a block from the last position sent
+ */
+public class EntityMovesPacket extends AbstractPacket {
+
+    // entityId, dx, dy, dz per move
+    private IntList moves;
+
+    public EntityMovesPacket() {}
+
+    public EntityMovesPacket(IntList moves) {
+        this.moves = moves;
+    }
+
+    @Override
+    protected void writePayload(ByteBuf out) {
+        out.writeInt(Protocol.ENTITY_MOVES);
+        out.writeInt(moves.size() / 4); //Count
+        for (int i = 0; i < moves.size(); i += 4) {
+            out.writeInt(moves.getInt(i)); //Entity
+            out.writeShort(moves.getInt(i + 1)); //dX
+            out.writeShort(moves.getInt(i + 2)); //dY
+            out.writeShort(moves.getInt(i + 3)); //dZ
+        }
+    }
+
+    @Override
+    public void read(Channel channel, ByteBuf msg) {
+
+    }
+}
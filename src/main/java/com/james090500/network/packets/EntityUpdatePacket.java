@@ -1,5 +1,6 @@
 package com.james090500.network.packets;
 
+import com.james090500.network.Protocol;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 
@@ -25,8 +26,7 @@ public class EntityUpdatePacket extends AbstractPacket {
 
     @Override
     protected void writePayload(ByteBuf out) {
-        out.writeInt(24); //id, action, x, y, z,
-        out.writeInt(5);
+        out.writeInt(Protocol.ENTITY_UPDATE);
         out.writeInt(entityId);
         out.writeInt(action);
         out.writeFloat(x);
@@ -0,0 +1,41 @@
+package com.james090500.network.packets;
+
+import com.james090500.network.Protocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+
+/**
+ * Where the client is in the join queue, see {@link com.james090500.network.AdmissionController}.
+ * Position 0 means it's been let in and chunks are on the way.
+ * Payload: i32 position (1 is next), i32 queue length
+ */
+public class JoinQueuePacket extends AbstractPacket {
+
+    private int position;
+    private int length;
+
+    public JoinQueuePacket() {}
+
+    public JoinQueuePacket(int position, int length) {
+        this.position = position;
+        this.length = length;
+    }
+
+    @Override
+    protected void writePayload(ByteBuf out) {
+        out.writeInt(Protocol.JOIN_QUEUE);
+        out.writeInt(position); //Position
+        out.writeInt(length); //Queue length
+    }
+
+    // Queued clients aren't players yet so nothing flushes for them
+    @Override
+    public boolean isUrgent() {
+        return true;
+    }
+
+    @Override
+    public void read(Channel channel, ByteBuf msg) {
+
+    }
+}
@@ -0,0 +1,42 @@
+package com.james090500.network.packets;
+
+import com.james090500.network.Protocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Every block changed in one chunk during a tick, for clients that advertise {@link Protocol#CAP_MULTI_BLOCK}.
+ * Payload: i32 chunkX, i32 chunkZ, i32 count, then count x i32 packed as
+ * localX | localZ << 4 | y << 8 | block << 17, in the order they were made
+ */
+public class MultiBlockChangePacket extends AbstractPacket {
+
+    private int chunkX;
+    private int chunkZ;
+    private IntList changes;
+
+    public MultiBlockChangePacket() {}
+
+    public MultiBlockChangePacket(int chunkX, int chunkZ, IntList changes) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.changes = changes;
+    }
+
+    @Override
+    protected void writePayload(ByteBuf out) {
+        out.writeInt(Protocol.MULTI_BLOCK_CHANGE);
+        out.writeInt(chunkX); //X
+        out.writeInt(chunkZ); //Z
+        out.writeInt(changes.size()); //Count
+        for (int i = 0; i < changes.size(); i++) {
+            out.writeInt(changes.getInt(i));
+        }
+    }
+
+    @Override
+    public void read(Channel channel, ByteBuf msg) {
+
+    }
+}
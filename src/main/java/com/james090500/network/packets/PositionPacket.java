@@ -0,0 +1,64 @@
+package com.james090500.network.packets;
+
+import com.james090500.BlockGameServer;
+import com.james090500.Player;
+import com.james090500.network.Connection;
+import com.james090500.network.Protocol;
+import com.james090500.utils.Metrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import org.joml.Vector3f;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The client's position. Payload: f32 x, f32 y, f32 z
+ */
+public class PositionPacket extends AbstractPacket {
+
+    private static final long MAX_MOVE_WINDOW_NANOS = 1_000_000_000L;
+
+    private static final LongAdder clamped = new LongAdder();
+
+    static {
+        Metrics.register("net.position", () -> "clamped=" + clamped.sum());
+    }
+
+    @Override
+    protected void writePayload(ByteBuf out) {
+
+    }
+
+    @Override
+    public void read(Channel channel, ByteBuf msg) {
+        Connection.get(channel).offer(Protocol.POSITION, msg.readInt(), msg.readInt(), msg.readInt(), 0);
+    }
+
+    @Override
+    public void handle(Connection connection, int xBits, int yBits, int zBits, int d) {
+        Player player = connection.getPlayer();
+        if (player == null) return; // not connected yet
+
+        float x = Float.intBitsToFloat(xBits);
+        float y = Float.intBitsToFloat(yBits);
+        float z = Float.intBitsToFloat(zBits);
+        if (!Float.isFinite(x) || !Float.isFinite(y) || !Float.isFinite(z)) return;
+
+        // Clamp to max-move-speed over the time since the last move, at most a second's worth, so a
+        // client can't jump across the map and drag worldgen along with it
+        long now = System.nanoTime();
+        long elapsed = Math.min(now - player.getLastMoveNanos(), MAX_MOVE_WINDOW_NANOS);
+        float maxStep = BlockGameServer.getInstance().getConfig().getMaxMoveSpeed() * elapsed / 1e9f;
+        player.setLastMoveNanos(now);
+
+        // World#update picks up chunk crossings, EntityTracker the move
+        Vector3f position = player.getPosition();
+        float distance = position.distance(x, y, z);
+        if (distance > maxStep) {
+            clamped.increment();
+            position.lerp(new Vector3f(x, y, z), maxStep / distance);
+        } else {
+            position.set(x, y, z);
+        }
+    }
+}
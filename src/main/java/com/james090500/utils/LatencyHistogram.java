@@ -0,0 +1,60 @@
+package com.james090500.utils;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with power of two buckets, cheap enough to record from any thread.
+ * Percentiles are the upper bound of the bucket they land in, so within 2x.
+ */
+public class LatencyHistogram {
+
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder count = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a sample
+     * @param nanos The latency
+     */
+    public void record(long nanos) {
+        nanos = Math.max(1, nanos);
+        buckets[63 - Long.numberOfLeadingZeros(nanos)].increment();
+        count.increment();
+        max.accumulate(nanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @param fraction 0.5 for the median, 0.99 for p99
+     * @return The percentile in milliseconds, 0 with no samples
+     */
+    public double percentileMs(double fraction) {
+        long total = count.sum();
+        if (total == 0) return 0;
+
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= target) {
+                return Math.min((2L << i) - 1, max.get()) / 1e6;
+            }
+        }
+        return max.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%.2fms p99=%.2fms max=%.2fms", count(), percentileMs(0.5), percentileMs(0.99), max.get() / 1e6);
+    }
+}
@@ -0,0 +1,29 @@
+package com.james090500.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class Metrics {
+
+    private static final Map<String, Supplier<String>> reporters = new LinkedHashMap<>();
+
+    /**
+     * Register a metric, replacing any with the same name
+     * @param name The name shown in reports, dotted by subsystem (e.g. codec.lz4)
+     * @param reporter Produces the current value, called from whichever thread asks for a report
+     */
+    public static synchronized void register(String name, Supplier<String> reporter) {
+        reporters.put(name, reporter);
+    }
+
+    /**
+     * Take a snapshot of every registered metric
+     * @return The metrics in registration order
+     */
+    public static synchronized Map<String, String> snapshot() {
+        Map<String, String> values = new LinkedHashMap<>();
+        reporters.forEach((name, reporter) -> values.put(name, reporter.get()));
+        return values;
+    }
+}
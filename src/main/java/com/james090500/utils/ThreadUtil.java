@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class ThreadUtil {
@@ -24,13 +25,23 @@ public class ThreadUtil {
         ExecutorService queue = queues.get(name);
         if(queue == null || queue.isShutdown()) {
             int cores = Runtime.getRuntime().availableProcessors();
-            ExecutorService newQueue = Executors.newFixedThreadPool(cores - 1);
+            ExecutorService newQueue = Executors.newFixedThreadPool(Math.max(1, cores - 1));
             queues.put(name, newQueue);
             return newQueue;
         }
         return queue;
     }
 
+    /**
+     * Tasks waiting in a queue, not counting those running
+     * @param name The queue name
+     * @return The count, 0 if the queue hasn't been created
+     */
+    public static int getBacklog(String name) {
+        ExecutorService queue = queues.get(name);
+        return queue instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0;
+    }
+
     /**
      * Run an item in the main queue
      */
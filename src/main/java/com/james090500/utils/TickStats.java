@@ -0,0 +1,92 @@
+package com.james090500.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * How long ticks take and how much the tick thread allocates, over the last minute
+ */
+public class TickStats {
+
+    // Tick length we aim for
+    public static final long TICK_NANOS = 50_000_000L;
+
+    private static final int WINDOW = 1200; // a minute at 20 ticks per second
+
+    private static final com.sun.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+            && bean.isThreadAllocatedMemorySupported() ? bean : null;
+
+    private final long[] durations = new long[WINDOW];
+    private final long[] allocations = new long[WINDOW];
+    private int next = 0;
+    private int size = 0;
+    private long ticks = 0;
+    private long overruns = 0;
+
+    // Moving average of recent ticks, about the last second's worth
+    private volatile long recentNanos = 0;
+
+    public record Snapshot(long ticks, long overruns, double avgMs, double p50Ms, double p99Ms, double maxMs, double allocKBPerTick) {
+        @Override
+        public String toString() {
+            return String.format("ticks=%d overruns=%d avg=%.2fms p50=%.2fms p99=%.2fms max=%.2fms alloc=%.1fKB/tick",
+                    ticks, overruns, avgMs, p50Ms, p99Ms, maxMs, allocKBPerTick);
+        }
+    }
+
+    /**
+     * Bytes the current thread has allocated so far, 0 if the JVM can't tell us
+     */
+    public static long allocatedBytes() {
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    public TickStats() {
+        Metrics.register("tick", () -> snapshot().toString());
+    }
+
+    /**
+     * Record a tick
+     * @param nanos How long it took
+     * @param allocated Bytes the tick thread allocated during it
+     */
+    public synchronized void record(long nanos, long allocated) {
+        durations[next] = nanos;
+        allocations[next] = allocated;
+        next = (next + 1) % WINDOW;
+        size = Math.min(size + 1, WINDOW);
+        ticks++;
+        if (nanos > TICK_NANOS) overruns++;
+        recentNanos += (nanos - recentNanos) / 20;
+    }
+
+    /**
+     * Roughly how long ticks have been taking over the last second, cheaper than a snapshot
+     */
+    public long getRecentNanos() {
+        return recentNanos;
+    }
+
+    /**
+     * Tick times over the window. Tick and overrun counts are since startup.
+     */
+    public synchronized Snapshot snapshot() {
+        if (size == 0) return new Snapshot(0, 0, 0, 0, 0, 0, 0);
+
+        long[] sorted = Arrays.copyOf(durations, size);
+        Arrays.sort(sorted);
+        long total = 0;
+        long allocated = 0;
+        for (int i = 0; i < size; i++) {
+            total += sorted[i];
+            allocated += allocations[i];
+        }
+
+        return new Snapshot(ticks, overruns,
+                total / (double) size / 1e6,
+                sorted[size / 2] / 1e6,
+                sorted[Math.min(size - 1, (int) (size * 0.99))] / 1e6,
+                sorted[size - 1] / 1e6,
+                allocated / (double) size / 1024);
+    }
+}
@@ -0,0 +1,222 @@
+package com.james090500.world;
+
+import com.james090500.BlockGameServer;
+import com.james090500.utils.Metrics;
+import com.james090500.utils.ThreadUtil;
+import com.james090500.world.codec.ChunkCodec;
+import com.james090500.world.codec.ChunkCodecs;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves dirty chunks a few at a time every tick, oldest first, instead of the whole world at once.
+ *
+ * Edits are already durable in the {@link EditLog}, so saving here is a lazy checkpoint: a chunk is
+ * left alone for a while after its first edit so a burst of building becomes one write, then saved
+ * when it reaches the front of the queue and the tick still has budget. Anything dirty for longer
+ * than MAX_STALENESS_MS is saved regardless of the budget, which bounds how much log has to be kept
+ * and replayed.
+ *
+ * Must only be used from the tick thread, the disk writes themselves happen on the region's I/O strand.
+ */
+public class AutoSaver {
+
+    private static final int MAX_CHUNKS_PER_TICK = 4;
+    private static final long TIME_BUDGET_NANOS = 2_000_000; // 2ms of the 50ms tick
+    private static final long MIN_DIRTY_MS = 60_000;
+    private static final long MAX_STALENESS_MS = 10 * 60_000;
+
+    private final World world;
+
+    // Dirty chunks in the order they were first dirtied, so the head is always the oldest
+    private final ArrayDeque<Chunk> dirty = new ArrayDeque<>();
+
+    // Chunks with a write queued on region I/O, their edit log segment can't be dropped until it's done
+    private final Set<Chunk> inFlightChunks = ConcurrentHashMap.newKeySet();
+
+    // Snapshot arrays handed to the disk thread and returned once written
+    private final ConcurrentLinkedQueue<byte[]> snapshots = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong savedChunks = new AtomicLong();
+    private final AtomicLong failedChunks = new AtomicLong();
+    private int lastTickSaved;
+    private long lastTickNanos;
+
+    public AutoSaver(World world) {
+        this.world = world;
+
+        Metrics.register("autosave", () -> String.format("backlog=%d oldest=%dms inflight=%d saved=%d failed=%d lastTick=%d (%dus)",
+                dirty.size(), getOldestDirtyAge(), inFlight.get(), savedChunks.get(), failedChunks.get(),
+                lastTickSaved, lastTickNanos / 1000));
+    }
+
+    /**
+     * Flag a chunk as needing saving and queue it if it isn't already
+     * @param chunk The edited chunk
+     * @param walSegment The edit log segment holding the edit
+     */
+    public void markDirty(Chunk chunk, long walSegment) {
+        chunk.needsSaving = true;
+        chunk.walSegment = Math.min(chunk.walSegment, walSegment);
+        if (chunk.dirtySince == 0) {
+            chunk.dirtySince = System.currentTimeMillis();
+            dirty.add(chunk);
+        }
+    }
+
+    /**
+     * Save as many of the oldest dirty chunks as this tick's budget allows
+     */
+    public void tick() {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        int saved = 0;
+
+        // In-flight chunks are stepped over in place rather than moved to the back, so the queue stays
+        // oldest first and the first young chunk ends the walk
+        Iterator<Chunk> iterator = dirty.iterator();
+        while (iterator.hasNext()) {
+            Chunk chunk = iterator.next();
+            long age = now - chunk.dirtySince;
+            boolean stale = age >= MAX_STALENESS_MS;
+
+            if (age < MIN_DIRTY_MS) break; // everything behind it is younger
+            if (!stale && (saved >= MAX_CHUNKS_PER_TICK || System.nanoTime() - start >= TIME_BUDGET_NANOS)) break;
+
+            // One write per chunk at a time, no point queueing another behind it; retry next time round
+            if (chunk.saveInFlight) continue;
+
+            iterator.remove();
+            chunk.dirtySince = 0;
+            save(chunk);
+            saved++;
+        }
+
+        lastTickSaved = saved;
+        lastTickNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Snapshot a chunk and write it on the region's I/O strand.
+     * The snapshot is taken here on the tick thread so the write never sees a half applied edit.
+     * @param chunk The chunk to save
+     */
+    public void save(Chunk chunk) {
+        if (!chunk.needsSaving) return;
+        chunk.needsSaving = false;
+        chunk.saveInFlight = true;
+        chunk.savingWalSegment = chunk.walSegment;
+        chunk.walSegment = Long.MAX_VALUE;
+        inFlightChunks.add(chunk);
+
+        ChunkCodec codec = ChunkCodecs.select(chunk);
+        chunk.editCount = 0;
+
+        byte[] snapshot = snapshots.poll();
+        if (snapshot == null) snapshot = new byte[Chunk.DATA_LENGTH];
+        System.arraycopy(chunk.chunkData, 0, snapshot, 0, Chunk.DATA_LENGTH);
+
+        byte[] data = snapshot;
+        inFlight.incrementAndGet();
+        try {
+            world.getRegionIO().submit(chunk.chunkX, chunk.chunkZ, () -> write(chunk, data, codec));
+        } catch (RuntimeException e) {
+            // Region I/O unavailable (shutting down), leave it for the full save on exit
+            chunk.saveInFlight = false;
+            chunk.needsSaving = true;
+            chunk.walSegment = Math.min(chunk.walSegment, chunk.savingWalSegment);
+            chunk.savingWalSegment = Long.MAX_VALUE;
+            inFlightChunks.remove(chunk);
+            snapshots.offer(data);
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Write a snapshot to its region, runs on the region's I/O strand
+     */
+    private void write(Chunk chunk, byte[] data, ChunkCodec codec) {
+        long walSegment = chunk.savingWalSegment;
+        try {
+            world.getRegion(chunk.chunkX, chunk.chunkZ).saveChunk(chunk.chunkX, chunk.chunkZ, data, codec);
+            savedChunks.incrementAndGet();
+            chunk.savingWalSegment = Long.MAX_VALUE;
+            inFlightChunks.remove(chunk);
+        } catch (IOException | RuntimeException e) {
+            failedChunks.incrementAndGet();
+            BlockGameServer.getLogger().severe("Failed to save chunk " + chunk.chunkX + "," + chunk.chunkZ + ": " + e);
+            // Keep holding the edit log segment until it's back in the dirty queue
+            ThreadUtil.getMainQueue().add(() -> {
+                markDirty(chunk, walSegment);
+                chunk.savingWalSegment = Long.MAX_VALUE;
+                inFlightChunks.remove(chunk);
+            });
+        } finally {
+            chunk.saveInFlight = false;
+            snapshots.offer(data);
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Wait for queued disk writes to finish
+     * @param timeoutMs How long to wait at most
+     * @return true if nothing is left in flight
+     */
+    public boolean awaitInFlight(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return inFlight.get() == 0;
+    }
+
+    /**
+     * Forget the queue, used once the world has been saved in full
+     */
+    public void clear() {
+        for (Chunk chunk : dirty) {
+            chunk.dirtySince = 0;
+            chunk.walSegment = Long.MAX_VALUE;
+        }
+        dirty.clear();
+    }
+
+    /**
+     * @return The oldest edit log segment holding an edit that isn't in a region yet, Long.MAX_VALUE if none
+     */
+    public long getOldestWalSegment() {
+        long oldest = Long.MAX_VALUE;
+        for (Chunk chunk : dirty) oldest = Math.min(oldest, chunk.walSegment);
+        for (Chunk chunk : inFlightChunks) oldest = Math.min(oldest, chunk.savingWalSegment);
+        return oldest;
+    }
+
+    /**
+     * @return The number of chunks waiting to be saved
+     */
+    public int getBacklog() {
+        return dirty.size();
+    }
+
+    /**
+     * @return How long the oldest dirty chunk has been waiting in ms, 0 if none
+     */
+    public long getOldestDirtyAge() {
+        Chunk oldest = dirty.peek();
+        return oldest == null ? 0 : System.currentTimeMillis() - oldest.dirtySince;
+    }
+}
@@ -8,8 +8,16 @@ import com.james090500.structure.Tree;
 import com.james090500.utils.OpenSimplexNoise;
 import com.james090500.utils.ThreadUtil;
 
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
 public class Chunk {
 
+    // Size in bytes of a chunk's block array (16 * 16 * 300)
+    public static final int DATA_LENGTH = 16 * 16 * 300;
+
     public final byte[] chunkData;
     
     public final int chunkSize = 16;
@@ -22,8 +30,32 @@ public class Chunk {
     public boolean needsMeshing = false;
     public boolean needsSaving = false;
 
+    // Autosave state, see AutoSaver
+    public long dirtySince = 0;
+    public volatile boolean saveInFlight = false;
+    // Oldest edit log segment with an edit not yet in a region, and the same for the save in flight
+    public long walSegment = Long.MAX_VALUE;
+    public volatile long savingWalSegment = Long.MAX_VALUE;
+
+    // Player edit tracking, used to pick a codec when saving
+    public long lastEditTime = 0;
+    public int editCount = 0;
+
     public ChunkStatus chunkStatus = ChunkStatus.EMPTY;
 
+    // Changes whenever the block data does, unique across all chunks so a reloaded chunk never matches an old one
+    private static final AtomicLong versions = new AtomicLong();
+    private volatile long version = versions.incrementAndGet();
+
+    // Content hash of the block data, clients key their chunk cache on it, see Protocol#CHUNK_HASHES
+    private static final XXHash64 xxHash = XXHashFactory.fastestInstance().hash64();
+    private long hash;
+    private long hashVersion = -1;
+
+    // The chunk's LZ4 block in its region file, only good until the version moves on from when it was read
+    private Region.StoredBlock storedBlock;
+    private long storedBlockVersion;
+
     public Chunk(int chunkX, int chunkZ) {
         this.chunkX = chunkX;
         this.chunkZ = chunkZ;
@@ -122,10 +154,12 @@ public class Chunk {
             if (this.chunkStatus == ChunkStatus.EMPTY) {
                 this.chunkStatus = ChunkStatus.TERRAIN;
                 this.generateTerrain();
+                this.bumpVersion();
             } else if (this.chunkStatus == ChunkStatus.TERRAIN) {
                 if (isNeighbors(ChunkStatus.EMPTY)) {
                     this.chunkStatus = ChunkStatus.DECORATIONS;
                     this.generateTrees();
+                    this.bumpVersion();
                 }
             } else if (this.chunkStatus == ChunkStatus.DECORATIONS) {
                 // We have finished generation time to mesh
@@ -136,6 +170,48 @@ public class Chunk {
             this.queued = false;
         });
     }
+
+    /**
+     * The version of the block data, see {@link com.james090500.network.ChunkPacketCache}
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Mark the block data as changed
+     */
+    public void bumpVersion() {
+        this.version = versions.incrementAndGet();
+    }
+
+    /**
+     * Remember where the block data is on disk, as it is right now
+     * @param storedBlock The block, or null
+     */
+    public void setStoredBlock(Region.StoredBlock storedBlock) {
+        this.storedBlockVersion = version;
+        this.storedBlock = storedBlock != null && storedBlock.uncompressedLength() == chunkData.length ? storedBlock : null;
+    }
+
+    /**
+     * The block data's LZ4 block on disk, or null if there isn't one or the chunk has changed since
+     */
+    public Region.StoredBlock getStoredBlock() {
+        return storedBlockVersion == version ? storedBlock : null;
+    }
+
+    /**
+     * XXH64 (seed 0) of the block data, recomputed only after the version changes. Tick thread only.
+     */
+    public long getHash() {
+        long current = version;
+        if (hashVersion != current) {
+            hash = xxHash.hash(chunkData, 0, chunkData.length, 0);
+            hashVersion = current;
+        }
+        return hash;
+    }
     /**
      * Generates the actual terrain
      */
@@ -256,8 +332,7 @@ public class Chunk {
 
     public void saveChunk() {
         if(this.chunkData != null && this.needsSaving) {
-            this.needsSaving = false;
-            ThreadUtil.getQueue("worldDisk").submit(() -> BlockGameServer.getInstance().getWorld().saveChunk(this.chunkX, this.chunkZ, this.chunkData));
+            BlockGameServer.getInstance().getWorld().getAutoSaver().save(this);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+package com.james090500.world;
+
+import com.james090500.BlockGameServer;
+import com.james090500.utils.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of player block edits.
+ *
+ * Edits are appended on the tick thread and committed once per tick as a single batch (group commit),
+ * written and fsynced on a dedicated thread. Regions only need a full chunk record now and then
+ * (see AutoSaver); anything newer is rebuilt from the log on startup.
+ *
+ * Layout on disk, a directory of numbered segments ("edits-<id>.wal", big-endian):
+ *  - Batch:
+ *      i32 recordCount
+ *      i32 crc32 of the records
+ *      records
+ *  - Record (13 bytes):
+ *      i32 x, i32 y, i32 z (world block coordinates)
+ *      u8  block
+ *
+ * A batch that is short or fails its checksum marks the torn tail of a crash, replay stops there.
+ * A new segment is started on every open and once the current one passes SEGMENT_BYTES. Segments are
+ * deleted once every edit in them is in a region file, see {@link #checkpoint(long)}.
+ */
+public class EditLog {
+
+    private static final int RECORD_SIZE = 13;
+    private static final int BATCH_HEADER_SIZE = 8;
+    private static final long SEGMENT_BYTES = 8L << 20;
+
+    public interface EditConsumer {
+        void accept(long segment, int x, int y, int z, byte block);
+    }
+
+    private final File dir;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "edit-log");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Tick thread: the batch being filled. Writer thread: the batch being written, handed back when done.
+    private ByteBuffer current = newBatch(64 * 1024);
+    private volatile ByteBuffer spare = newBatch(64 * 1024);
+    private int currentCount;
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+
+    // Segment new edits are going to. Only ever increases.
+    private volatile long segment;
+
+    // Writer thread only
+    private FileChannel out;
+    private long outSize;
+    private final CRC32 crc = new CRC32();
+
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder edits = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder syncNanos = new LongAdder();
+
+    public EditLog(File dir) throws IOException {
+        this.dir = dir;
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create edit log directory: " + dir.getAbsolutePath());
+        }
+
+        long[] ids = listSegments();
+        this.segment = ids.length == 0 ? 1 : ids[ids.length - 1] + 1;
+
+        Metrics.register("editlog", () -> {
+            long c = commits.sum();
+            return String.format("segments=%d edits=%d commits=%d bytes=%d edits/commit=%.1f fsync=%dus",
+                    listSegments().length, edits.sum(), c, bytes.sum(),
+                    c == 0 ? 0.0 : (double) edits.sum() / c, c == 0 ? 0 : syncNanos.sum() / c / 1000);
+        });
+    }
+
+    /**
+     * @return The segment edits appended now will land in (or a later one)
+     */
+    public long getSegment() {
+        return segment;
+    }
+
+    /**
+     * Append an edit to the current batch, called from the tick thread.
+     * It is durable once the batch is committed and written.
+     */
+    public void append(int x, int y, int z, byte block) {
+        if (current.remaining() < RECORD_SIZE) {
+            ByteBuffer bigger = newBatch(current.capacity() * 2);
+            current.flip();
+            bigger.put(current);
+            current = bigger;
+        }
+        current.putInt(x).putInt(y).putInt(z).put(block);
+        currentCount++;
+    }
+
+    /**
+     * Hand the current batch to the writer. If the previous batch is still being written the edits
+     * stay where they are and go out with the next commit, so there is at most one write in flight.
+     */
+    public void commit() {
+        if (currentCount == 0 || !writing.compareAndSet(false, true)) return;
+
+        ByteBuffer batch = current;
+        batch.putInt(0, currentCount);
+        batch.flip();
+        edits.add(currentCount);
+
+        current = spare;
+        current.clear().position(BATCH_HEADER_SIZE);
+        currentCount = 0;
+
+        writer.submit(() -> write(batch));
+    }
+
+    /**
+     * Commit everything appended so far and wait until it's on disk
+     */
+    public void sync() {
+        do {
+            commit();
+            awaitWriter();
+        } while (currentCount > 0);
+    }
+
+    /**
+     * Delete segments whose edits have all been saved to regions
+     * @param oldestLive The oldest segment still needed, everything before it goes
+     */
+    public void checkpoint(long oldestLive) {
+        writer.submit(() -> {
+            for (long id : listSegments()) {
+                if (id >= oldestLive || id >= segment) break;
+                File file = segmentFile(id);
+                if (!file.delete()) {
+                    BlockGameServer.getLogger().warning("Failed to delete edit log segment " + file);
+                }
+            }
+        });
+    }
+
+    /**
+     * Read every segment in order, oldest first
+     * @param consumer Receives each edit with the segment it was read from
+     * @return The number of edits replayed
+     */
+    public int replay(EditConsumer consumer) throws IOException {
+        int replayed = 0;
+        for (long id : listSegments()) {
+            File file = segmentFile(id);
+            ByteBuffer data;
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                data = ByteBuffer.allocate((int) in.size());
+                while (data.hasRemaining() && in.read(data) >= 0) { }
+            }
+            data.flip();
+
+            while (data.remaining() >= BATCH_HEADER_SIZE) {
+                int start = data.position();
+                int count = data.getInt();
+                int checksum = data.getInt();
+                if (count < 0 || (long) count * RECORD_SIZE > data.remaining()) break;
+
+                crc.reset();
+                crc.update(data.slice(data.position(), count * RECORD_SIZE));
+                if ((int) crc.getValue() != checksum) {
+                    data.position(start);
+                    break;
+                }
+
+                for (int i = 0; i < count; i++) {
+                    consumer.accept(id, data.getInt(), data.getInt(), data.getInt(), data.get());
+                }
+                replayed += count;
+            }
+
+            if (data.hasRemaining()) {
+                BlockGameServer.getLogger().warning("Edit log " + file.getName() + " has a torn tail of " + data.remaining() + " bytes, ignoring it");
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Sync outstanding edits and stop the writer
+     * @param deleteAll Whether every edit is now in a region file, so the whole log can go
+     */
+    public void close(boolean deleteAll) {
+        sync();
+        if (deleteAll) checkpoint(Long.MAX_VALUE);
+        writer.submit(() -> {
+            try {
+                if (out != null) out.close();
+            } catch (IOException ignored) {}
+            out = null;
+            if (deleteAll) {
+                File file = segmentFile(segment);
+                if (file.exists() && !file.delete()) {
+                    BlockGameServer.getLogger().warning("Failed to delete edit log segment " + file);
+                }
+            }
+        });
+        awaitWriter();
+        writer.shutdown();
+    }
+
+    /**
+     * Write one batch and fsync it, runs on the writer thread
+     */
+    private void write(ByteBuffer batch) {
+        try {
+            crc.reset();
+            crc.update(batch.slice(BATCH_HEADER_SIZE, batch.limit() - BATCH_HEADER_SIZE));
+            batch.putInt(4, (int) crc.getValue());
+
+            if (out == null || outSize >= SEGMENT_BYTES) {
+                if (out != null) {
+                    out.close();
+                    segment++;
+                }
+                out = FileChannel.open(segmentFile(segment).toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                outSize = out.size();
+            }
+
+            int length = batch.remaining();
+            while (batch.hasRemaining()) out.write(batch);
+            long start = System.nanoTime();
+            out.force(false);
+            syncNanos.add(System.nanoTime() - start);
+
+            outSize += length;
+            bytes.add(length);
+            commits.increment();
+        } catch (IOException e) {
+            BlockGameServer.getLogger().severe("Failed to write edit log: " + e);
+        } finally {
+            spare = batch;
+            writing.set(false);
+        }
+    }
+
+    private void awaitWriter() {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {}
+    }
+
+    private File segmentFile(long id) {
+        return new File(dir, "edits-" + id + ".wal");
+    }
+
+    /**
+     * @return The ids of the segments on disk, ascending
+     */
+    private long[] listSegments() {
+        String[] names = dir.list((d, name) -> name.startsWith("edits-") && name.endsWith(".wal"));
+        if (names == null) return new long[0];
+        long[] ids = new long[names.length];
+        int n = 0;
+        for (String name : names) {
+            try {
+                ids[n++] = Long.parseLong(name.substring(6, name.length() - 4));
+            } catch (NumberFormatException ignored) {}
+        }
+        ids = Arrays.copyOf(ids, n);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static ByteBuffer newBatch(int capacity) {
+        return ByteBuffer.allocate(capacity).position(BATCH_HEADER_SIZE);
+    }
+}
@@ -0,0 +1,169 @@
+package com.james090500.world;
+
+import com.james090500.Player;
+import com.james090500.network.Protocol;
+import com.james090500.network.packets.EntityMovesPacket;
+import com.james090500.network.packets.EntityUpdatePacket;
+import com.james090500.utils.Metrics;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps each player's view of the other players in sync. A player sees an entity once they
+ * have been sent the chunk it stands in, from the tick after it left their chunk lane so the
+ * chunk always arrives first: they get a spawn with its absolute position, then
+ * its movement each tick as short fixed point deltas batched into one packet, then a remove
+ * when it leaves their chunks or the server.
+ *
+ * Tick thread only.
+ */
+public class EntityTracker {
+
+    private final World world;
+    private final Int2ObjectMap<Tracked> entities = new Int2ObjectOpenHashMap<>();
+
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder movePackets = new LongAdder();
+    private final LongAdder absoluteMoves = new LongAdder();
+
+    private static class Tracked {
+        final Player player;
+        // Position last sent to watchers, in 1/POSITION_SCALE blocks
+        int x, y, z;
+        // This tick's quantised position
+        int nextX, nextY, nextZ;
+        // Entities this player has been sent a spawn for
+        final IntOpenHashSet visible = new IntOpenHashSet();
+        // Moves to send this player this tick: entityId, dx, dy, dz
+        final IntArrayList pendingMoves = new IntArrayList();
+
+        Tracked(Player player) {
+            this.player = player;
+        }
+    }
+
+    public EntityTracker(World world) {
+        this.world = world;
+
+        Metrics.register("net.entities", () -> String.format("entities=%d moves=%d movePackets=%d absoluteMoves=%d",
+                entities.size(), moves.sum(), movePackets.sum(), absoluteMoves.sum()));
+    }
+
+    /**
+     * Start tracking a player, others see them from the next tick
+     */
+    public void add(Player player) {
+        Tracked tracked = new Tracked(player);
+        tracked.x = tracked.nextX = quantise(player.getPosition().x);
+        tracked.y = tracked.nextY = quantise(player.getPosition().y);
+        tracked.z = tracked.nextZ = quantise(player.getPosition().z);
+        entities.put(player.getEntityId(), tracked);
+    }
+
+    /**
+     * Stop tracking a player and remove them from everyone who could see them
+     */
+    public void remove(Player player) {
+        int id = player.getEntityId();
+        if (entities.remove(id) == null) return;
+
+        for (Tracked watcher : entities.values()) {
+            if (watcher.visible.remove(id)) {
+                watcher.player.sendPacket(new EntityUpdatePacket(id, Protocol.ENTITY_REMOVE, 0, 0, 0));
+            }
+        }
+    }
+
+    /**
+     * Send this tick's spawns, moves and removes. Run after chunks are sent so watchers are current.
+     */
+    public void tick() {
+        for (Tracked entity : entities.values()) {
+            entity.nextX = quantise(entity.player.getPosition().x);
+            entity.nextY = quantise(entity.player.getPosition().y);
+            entity.nextZ = quantise(entity.player.getPosition().z);
+        }
+
+        // Spawns and moves, for whoever has the chunk each entity is in
+        for (Tracked entity : entities.values()) {
+            int id = entity.player.getEntityId();
+            boolean moved = entity.nextX != entity.x || entity.nextY != entity.y || entity.nextZ != entity.z;
+            World.ChunkPos pos = new World.ChunkPos(chunkOf(entity.nextX), chunkOf(entity.nextZ));
+
+            for (Player player : world.getWatchers(pos.x(), pos.y())) {
+                Tracked watcher = entities.get(player.getEntityId());
+                if (watcher == null || watcher == entity) continue;
+
+                if (!watcher.visible.contains(id)) {
+                    // Its chunk is still in the lane and would arrive after the spawn, try again next tick
+                    if (player.isChunkInLane(pos)) continue;
+                    watcher.visible.add(id);
+                    player.sendPacket(new EntityUpdatePacket(id, Protocol.ENTITY_SPAWN, unquantise(entity.nextX), unquantise(entity.nextY), unquantise(entity.nextZ)));
+                } else if (moved) {
+                    int dx = entity.nextX - entity.x;
+                    int dy = entity.nextY - entity.y;
+                    int dz = entity.nextZ - entity.z;
+                    if (player.hasCapability(Protocol.CAP_ENTITY_DELTAS) && fitsShort(dx) && fitsShort(dy) && fitsShort(dz)) {
+                        watcher.pendingMoves.add(id);
+                        watcher.pendingMoves.add(dx);
+                        watcher.pendingMoves.add(dy);
+                        watcher.pendingMoves.add(dz);
+                    } else {
+                        // Older client, or too far for a delta
+                        player.sendPacket(new EntityUpdatePacket(id, Protocol.ENTITY_MOVE, unquantise(entity.nextX), unquantise(entity.nextY), unquantise(entity.nextZ)));
+                        absoluteMoves.increment();
+                    }
+                    moves.increment();
+                }
+            }
+        }
+
+        // Removes for entities no longer in a player's chunks, then one packet with all their moves
+        for (Tracked watcher : entities.values()) {
+            Player player = watcher.player;
+            IntIterator it = watcher.visible.iterator();
+            while (it.hasNext()) {
+                int id = it.nextInt();
+                Tracked entity = entities.get(id);
+                if (entity == null || !player.getLoadedChunks().contains(new World.ChunkPos(chunkOf(entity.nextX), chunkOf(entity.nextZ)))) {
+                    it.remove();
+                    player.sendPacket(new EntityUpdatePacket(id, Protocol.ENTITY_REMOVE, 0, 0, 0));
+                }
+            }
+
+            if (!watcher.pendingMoves.isEmpty()) {
+                // Encode now, the list is reused next tick
+                player.send(new EntityMovesPacket(watcher.pendingMoves).encode(player.getChannel().alloc()));
+                watcher.pendingMoves.clear();
+                movePackets.increment();
+            }
+        }
+
+        for (Tracked entity : entities.values()) {
+            entity.x = entity.nextX;
+            entity.y = entity.nextY;
+            entity.z = entity.nextZ;
+        }
+    }
+
+    private static int quantise(float value) {
+        return Math.round(value * Protocol.POSITION_SCALE);
+    }
+
+    private static float unquantise(int value) {
+        return (float) value / Protocol.POSITION_SCALE;
+    }
+
+    private static int chunkOf(int quantised) {
+        return Math.floorDiv(quantised, 16 * Protocol.POSITION_SCALE);
+    }
+
+    private static boolean fitsShort(int value) {
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+}
@@ -1,8 +1,7 @@
 package com.james090500.world;
 
-import net.jpountz.lz4.LZ4Compressor;
-import net.jpountz.lz4.LZ4Factory;
-import net.jpountz.lz4.LZ4SafeDecompressor;
+import com.james090500.world.codec.ChunkCodec;
+import com.james090500.world.codec.ChunkCodecs;
 
 import java.io.EOFException;
 import java.io.File;
@@ -24,7 +23,7 @@ import java.util.Arrays;
  *      Per-chunk 16-byte entry:
  *          u64 offset (0 = absent)
  *          u32 length (compressed payload length)
- *          u8  codec (0=RAW, 2=LZ4)
+ *          u8  codec (0=RAW, 2=LZ4, 3=RLE+LZ4, 4=LZ4-HC, see ChunkCodecs)
  *          u8  flags (bit0=hasChecksum [unused here])
  *          u8  reserved
  *          u8  reserved
@@ -35,7 +34,10 @@ import java.util.Arrays;
  * Notes:
  *  - Append-only writes: we never overwrite old chunk data in-place. We only update the directory entry
  *    after the new data is fsynced. This improves crash safety and avoids partial-write corruption.
- *  - We use LZ4 for fast compression; if compression would grow the data, we store RAW instead.
+ *  - The codec is chosen per chunk by the caller (see ChunkCodecs.select); if it would grow the data,
+ *    we store RAW instead. Any codec ever written stays readable.
+ *  - Records are built and read in a per-thread direct scratch buffer, so saving and loading a chunk
+ *    doesn't allocate; loads can decompress straight into the caller's chunk array.
  *  - All integers are little-endian.
  */
 public class Region {
@@ -56,19 +58,38 @@ public class Region {
     private static final int ENTRY_FLAGS_OFFSET = 13;  // u8
     // 14,15 reserved
 
-    // Codec identifiers
-    private static final byte CODEC_RAW = 0;
-    private static final byte CODEC_LZ4 = 2;
+    // Codec identifiers live in ChunkCodecs
+    private static final byte CODEC_ABSENT = -1;     // internal: no record stored
+
+    // Chunk record header: u32 uncompressedLength
+    private static final int RECORD_HEADER_SIZE = 4;
 
     // Flags (not used yet, reserved for future)
     private static final byte FLAG_CHECKSUM = 1; // bit0 (unused in this implementation)
 
+    /**
+     * A chunk's LZ4 block where it sits in the region file. It's the same block format
+     * {@link com.james090500.network.packets.CompressedChunkPacket} carries, so it can be sent as is.
+     * Records are never overwritten, so these bytes stay put even after the chunk is saved again.
+     */
+    public record StoredBlock(FileChannel file, long position, int length, int uncompressedLength) { }
+
     // ---------- State ----------
     private final File regionFile;
     private final RandomAccessFile raf;
     private final FileChannel ch;
 
-    private final LZ4Factory lz4 = LZ4Factory.fastestInstance();
+    // Reused directory entry buffer, only touched while holding ioLock
+    private final ByteBuffer dirEntry = ByteBuffer.allocateDirect(DIR_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    // Reused record header buffer, same rules
+    private final ByteBuffer recordHeader = ByteBuffer.allocateDirect(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    // Per-thread direct scratch for whole chunk records (header + payload). Sized for the worst case
+    // of a full chunk under any codec so saves and loads never allocate; the direct buffer also lets
+    // the FileChannel write/read without copying through a temporary buffer.
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() ->
+            ByteBuffer.allocateDirect(RECORD_HEADER_SIZE + ChunkCodecs.RLE_LZ4.maxEncodedLength(Chunk.DATA_LENGTH))
+                    .order(ByteOrder.LITTLE_ENDIAN));
 
     // A lightweight lock per region to serialize writes/reads and protect header/directory integrity.
     // (You can replace with a ReentrantReadWriteLock if you want more concurrency.)
@@ -161,131 +182,196 @@ public class Region {
     }
 
     /**
-     * Save a chunk's bytes at (chunkX, chunkZ). This method chooses LZ4 or RAW per chunk.
+     * Save a chunk's bytes at (chunkX, chunkZ) with plain LZ4, or RAW if that doesn't shrink it.
      * @param chunkX world chunk X
      * @param chunkZ world chunk Z
      * @param chunkData uncompressed chunk payload (e.g., your block-id bytes)
      */
     public void saveChunk(int chunkX, int chunkZ, byte[] chunkData) throws IOException {
+        saveChunk(chunkX, chunkZ, chunkData, ChunkCodecs.LZ4);
+    }
+
+    /**
+     * Save a chunk's bytes at (chunkX, chunkZ) with a specific codec.
+     * If the codec can't encode the chunk, or doesn't make it smaller, it is stored RAW.
+     * @param chunkX world chunk X
+     * @param chunkZ world chunk Z
+     * @param chunkData uncompressed chunk payload (e.g., your block-id bytes)
+     * @param codec the codec to try
+     */
+    public void saveChunk(int chunkX, int chunkZ, byte[] chunkData, ChunkCodec codec) throws IOException {
         if (chunkData == null) throw new IllegalArgumentException("chunkData == null");
 
-        synchronized (ioLock) {
-            // ---- 1) Compress with LZ4 (fast) and compare to RAW ----
-            byte codec = CODEC_LZ4;
-            byte[] payload;
-
-            // LZ4 bound and compression
-            LZ4Compressor compressor = lz4.fastCompressor();
-            int maxCompressedLength = compressor.maxCompressedLength(chunkData.length);
-            byte[] tmp = new byte[maxCompressedLength];
-            int compLen = compressor.compress(chunkData, 0, chunkData.length, tmp, 0, maxCompressedLength);
-            if (compLen <= 0 || compLen >= chunkData.length) {
-                // Compression ineffective: store RAW
-                codec = CODEC_RAW;
-                payload = chunkData;
-            } else {
-                payload = Arrays.copyOf(tmp, compLen);
-            }
+        // ---- 1) Encode straight into this thread's scratch buffer ----
+        // Encoding only touches thread-local state, so it happens outside the region lock.
+        // Record = [u32 uncompressedLength][payload], built in place so it goes out in one write.
+        ByteBuffer record = scratch(RECORD_HEADER_SIZE + Math.max(codec.maxEncodedLength(chunkData.length), chunkData.length));
+        record.putInt(0, chunkData.length);
+
+        long start = System.nanoTime();
+        int compLen = codec.encode(chunkData, record, RECORD_HEADER_SIZE);
+        if (compLen <= 0 || compLen >= chunkData.length) {
+            // Compression ineffective: store RAW
+            codec = ChunkCodecs.RAW;
+            compLen = codec.encode(chunkData, record, RECORD_HEADER_SIZE);
+        }
+        ChunkCodecs.getStats(codec.getId()).recordEncode(chunkData.length, compLen, System.nanoTime() - start);
+        record.limit(RECORD_HEADER_SIZE + compLen);
 
+        synchronized (ioLock) {
             // ---- 2) Append chunk record at end of file ----
             long appendOffset = raf.length();
             ch.position(appendOffset);
-
-            // Record = [u32 uncompressedLength][payload]
-            ByteBuffer recHdr = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
-            recHdr.putInt(chunkData.length);
-            recHdr.flip();
-            while (recHdr.hasRemaining()) ch.write(recHdr);
-            ch.write(ByteBuffer.wrap(payload));
+            while (record.hasRemaining()) ch.write(record);
             ch.force(true); // ensure payload is durable before directory update
 
             // ---- 3) Update directory entry atomically ----
-            int localX = Math.floorMod(chunkX, REGION_SIZE);
-            int localZ = Math.floorMod(chunkZ, REGION_SIZE);
-            int index = localZ * REGION_SIZE + localX;
-
-            long entryPos = HEADER_SIZE + (long) index * DIR_ENTRY_SIZE;
-            ByteBuffer dir = ByteBuffer.allocate(DIR_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
-            dir.putLong(appendOffset);         // offset
-            dir.putInt(payload.length);        // compressed length
-            dir.put(codec);                    // codec
-            dir.put((byte) 0);                 // flags (no checksum)
-            dir.put((byte) 0);                 // reserved
-            dir.put((byte) 0);                 // reserved
-            dir.flip();
-
-            ch.position(entryPos);
-            while (dir.hasRemaining()) ch.write(dir);
+            dirEntry.clear();
+            dirEntry.putLong(appendOffset);    // offset
+            dirEntry.putInt(compLen);          // compressed length
+            dirEntry.put(codec.getId());       // codec
+            dirEntry.put((byte) 0);            // flags (no checksum)
+            dirEntry.put((byte) 0);            // reserved
+            dirEntry.put((byte) 0);            // reserved
+            dirEntry.flip();
+
+            ch.position(entryPosition(chunkX, chunkZ));
+            while (dirEntry.hasRemaining()) ch.write(dirEntry);
             ch.force(true); // fsync directory update
         }
     }
 
     /**
      * Load a chunk at (chunkX, chunkZ). Returns null if the chunk isn't present.
+     * Prefer {@link #loadChunk(int, int, byte[])} on hot paths, this allocates the result array.
      */
     public byte[] loadChunk(int chunkX, int chunkZ) throws IOException {
+        byte codec = readRecord(chunkX, chunkZ);
+        if (codec == CODEC_ABSENT) return null;
+
+        ByteBuffer record = SCRATCH.get();
+        byte[] chunkData = new byte[record.getInt(0)];
+        decode(codec, record, chunkData);
+        return chunkData;
+    }
+
+    /**
+     * Load a chunk at (chunkX, chunkZ) straight into the caller's array, without allocating.
+     * If the stored chunk is shorter than dest the remainder is zero filled.
+     * @param chunkX world chunk X
+     * @param chunkZ world chunk Z
+     * @param dest the array to decompress into, normally the chunk's own block array
+     * @return true if the chunk was present and dest was filled, false if absent
+     */
+    public boolean loadChunk(int chunkX, int chunkZ, byte[] dest) throws IOException {
+        byte codec = readRecord(chunkX, chunkZ);
+        if (codec == CODEC_ABSENT) return false;
+
+        decode(codec, SCRATCH.get(), dest);
+        return true;
+    }
+
+    /**
+     * Find where a chunk's LZ4 block is stored, for sending it without decompressing
+     * @param chunkX world chunk X
+     * @param chunkZ world chunk Z
+     * @return the block, or null if the chunk is absent or stored with a codec that isn't plain LZ4 (or LZ4-HC)
+     */
+    public StoredBlock findLz4Block(int chunkX, int chunkZ) throws IOException {
+        synchronized (ioLock) {
+            dirEntry.clear();
+            ch.position(entryPosition(chunkX, chunkZ));
+            if (ch.read(dirEntry) != DIR_ENTRY_SIZE) return null;
+            dirEntry.flip();
+
+            long offset = dirEntry.getLong();
+            int length = dirEntry.getInt();
+            byte codec = dirEntry.get();
+            if (offset == 0L || length == 0) return null;
+            if (codec != ChunkCodecs.CODEC_LZ4 && codec != ChunkCodecs.CODEC_LZ4_HC) return null;
+
+            recordHeader.clear();
+            ch.position(offset);
+            if (ch.read(recordHeader) != RECORD_HEADER_SIZE) return null;
+            return new StoredBlock(ch, offset + RECORD_HEADER_SIZE, length, recordHeader.getInt(0));
+        }
+    }
+
+    /**
+     * Reads a chunk record into this thread's scratch buffer.
+     * On return the buffer holds [u32 uncompressedLength][payload] between 0 and its limit.
+     * @return the codec the payload was stored with, or CODEC_ABSENT if the chunk isn't present
+     */
+    private byte readRecord(int chunkX, int chunkZ) throws IOException {
         synchronized (ioLock) {
             // ---- 1) Read directory entry ----
-            int localX = Math.floorMod(chunkX, REGION_SIZE);
-            int localZ = Math.floorMod(chunkZ, REGION_SIZE);
-            int index = localZ * REGION_SIZE + localX;
-            long entryPos = HEADER_SIZE + (long) index * DIR_ENTRY_SIZE;
-
-            ByteBuffer dir = ByteBuffer.allocate(DIR_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
-            ch.position(entryPos);
-            int read = ch.read(dir);
-            if (read != DIR_ENTRY_SIZE) return null; // truncated directory (corrupt file)
-            dir.flip();
-
-            long offset = dir.getLong();
-            int length = dir.getInt();
-            byte codec = dir.get();
-            byte flags = dir.get(); // currently unused
-            dir.get(); // reserved
-            dir.get(); // reserved
-
-            if (offset == 0L || length == 0) return null; // not present
-
-            // ---- 2) Read chunk record header (uncompressed length) ----
+            dirEntry.clear();
+            ch.position(entryPosition(chunkX, chunkZ));
+            int read = ch.read(dirEntry);
+            if (read != DIR_ENTRY_SIZE) return CODEC_ABSENT; // truncated directory (corrupt file)
+            dirEntry.flip();
+
+            long offset = dirEntry.getLong();
+            int length = dirEntry.getInt();
+            byte codec = dirEntry.get();
+            // flags + reserved bytes are currently unused
+
+            if (offset == 0L || length == 0) return CODEC_ABSENT; // not present
+
+            // ---- 2) Read record header (uncompressed length) and payload in one go ----
+            ByteBuffer record = scratch(RECORD_HEADER_SIZE + length);
+            record.limit(RECORD_HEADER_SIZE + length);
             ch.position(offset);
-            ByteBuffer recHdr = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
-            int n = ch.read(recHdr);
-            if (n != 4) throw new EOFException("Chunk header truncated at offset " + offset);
-            recHdr.flip();
-            int uncompressedLen = recHdr.getInt();
-
-            // ---- 3) Read payload ----
-            ByteBuffer payload = ByteBuffer.allocate(length);
-            int total = 0;
-            while (total < length) {
-                int r = ch.read(payload);
-                if (r < 0) throw new EOFException("Chunk payload truncated at offset " + (offset + 4));
-                total += r;
-            }
-            byte[] payloadArr = payload.array();
-
-            // ---- 4) Decompress according to codec ----
-            switch (codec) {
-                case CODEC_RAW:
-                    if (payloadArr.length != uncompressedLen) {
-                        // Defensive: RAW should match expected size
-                        if (payloadArr.length < uncompressedLen) {
-                            // pad with zeros if short (corrupt but survivable)
-                            byte[] fixed = new byte[uncompressedLen];
-                            System.arraycopy(payloadArr, 0, fixed, 0, payloadArr.length);
-                            return fixed;
-                        }
-                        // If longer, trim to expected length
-                        return Arrays.copyOf(payloadArr, uncompressedLen);
-                    }
-                    return payloadArr;
-                case CODEC_LZ4:
-                    LZ4SafeDecompressor decompressor = lz4.safeDecompressor();
-                    return decompressor.decompress(payloadArr, uncompressedLen);
-                default:
-                    throw new IOException("Unknown codec id: " + codec);
+            while (record.hasRemaining()) {
+                if (ch.read(record) < 0) throw new EOFException("Chunk record truncated at offset " + offset);
             }
+            record.flip();
+            return codec;
+        }
+    }
+
+    /**
+     * Decode a record held in scratch into dest according to codec
+     */
+    private void decode(byte codec, ByteBuffer record, byte[] dest) throws IOException {
+        int uncompressedLen = record.getInt(0);
+        int length = record.limit() - RECORD_HEADER_SIZE;
+        if (uncompressedLen > dest.length) {
+            throw new IOException("Chunk too large for destination: " + uncompressedLen + " > " + dest.length);
+        }
+
+        ChunkCodec chunkCodec = ChunkCodecs.get(codec);
+        if (chunkCodec == null) throw new IOException("Unknown codec id: " + codec);
+
+        long start = System.nanoTime();
+        int filled = chunkCodec.decode(record, RECORD_HEADER_SIZE, length, dest, uncompressedLen);
+        ChunkCodecs.getStats(codec).recordDecode(System.nanoTime() - start);
+
+        // pad with zeros if short (corrupt but survivable)
+        if (filled < dest.length) Arrays.fill(dest, filled, dest.length, (byte) 0);
+    }
+
+    /**
+     * Byte position of the directory entry for a chunk
+     */
+    private static long entryPosition(int chunkX, int chunkZ) {
+        int localX = Math.floorMod(chunkX, REGION_SIZE);
+        int localZ = Math.floorMod(chunkZ, REGION_SIZE);
+        int index = localZ * REGION_SIZE + localX;
+        return HEADER_SIZE + (long) index * DIR_ENTRY_SIZE;
+    }
+
+    /**
+     * This thread's scratch buffer, grown if it can't hold minCapacity bytes.
+     * Returned cleared (position 0, limit capacity).
+     */
+    private static ByteBuffer scratch(int minCapacity) {
+        ByteBuffer buf = SCRATCH.get();
+        if (buf.capacity() < minCapacity) {
+            buf = ByteBuffer.allocateDirect(minCapacity).order(ByteOrder.LITTLE_ENDIAN);
+            SCRATCH.set(buf);
         }
+        return buf.clear();
     }
 
     /**
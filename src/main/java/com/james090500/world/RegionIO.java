@@ -0,0 +1,135 @@
+package com.james090500.world;
+
+import com.james090500.BlockGameServer;
+import com.james090500.utils.Metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs chunk saves and loads on a pool of I/O threads, partitioned by region.
+ *
+ * Each region has its own strand: tasks for one region run one at a time in submission order, so
+ * a save is never overtaken by an older save of the same chunk, while different region files are
+ * read and written in parallel.
+ */
+public class RegionIO {
+
+    // Tasks a strand runs before giving its thread to another region
+    private static final int STRAND_BATCH = 64;
+
+    private final ExecutorService pool;
+    private final int threads;
+    private final ConcurrentHashMap<Long, Strand> strands = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder taskNanos = new LongAdder();
+
+    public RegionIO(int threads) {
+        this.threads = threads;
+        AtomicInteger id = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "region-io-" + id.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        Metrics.register("regionio", () -> {
+            long n = tasks.sum();
+            return String.format("threads=%d regions=%d pending=%d tasks=%d avg=%dus",
+                    this.threads, strands.size(), pending.get(), n, n == 0 ? 0 : taskNanos.sum() / n / 1000);
+        });
+    }
+
+    /**
+     * Queue a task on the strand of the region holding a chunk
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @param task The I/O to run
+     */
+    public void submit(int chunkX, int chunkZ, Runnable task) {
+        if (pool.isShutdown()) throw new RejectedExecutionException("Region I/O is shut down");
+
+        long key = (long) Math.floorDiv(chunkX, 32) << 32 | (Math.floorDiv(chunkZ, 32) & 0xFFFFFFFFL);
+        pending.incrementAndGet();
+        strands.computeIfAbsent(key, k -> new Strand()).submit(task);
+    }
+
+    /**
+     * Wait for everything submitted so far to finish
+     * @param timeoutMs How long to wait at most
+     * @return true if nothing is pending
+     */
+    public boolean awaitIdle(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (pending.get() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return pending.get() == 0;
+    }
+
+    /**
+     * Stop the I/O threads once queued work is done
+     */
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(30, TimeUnit.SECONDS)) {
+                BlockGameServer.getLogger().warning("Region I/O still busy after 30s, abandoning " + pending.get() + " tasks");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class Strand implements Runnable {
+        private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        void submit(Runnable task) {
+            queue.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                pool.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            int ran = 0;
+            while (ran < STRAND_BATCH && (task = queue.poll()) != null) {
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    BlockGameServer.getLogger().severe("Region I/O task failed: " + t);
+                } finally {
+                    taskNanos.add(System.nanoTime() - start);
+                    tasks.increment();
+                    pending.decrementAndGet();
+                }
+                ran++;
+            }
+            scheduled.set(false);
+            // Either we hit the batch limit or a task slipped in after the last poll
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.james090500.world;
+
+import com.james090500.Player;
+import com.james090500.network.Connection;
+import com.james090500.utils.Metrics;
+import com.james090500.utils.TickStats;
+
+import java.util.Collection;
+
+/**
+ * Sizes each player's view distance to what their connection and the server can keep up with.
+ * Players start at the minimum. Once a second the distance grows by one for anyone who has been
+ * sent everything in view with little left in their socket, and shrinks by one for anyone whose
+ * backlog would take too long to drain at the rate they've been reading. Everyone above the
+ * minimum shrinks while ticks run over budget, and nobody grows until they're comfortably under.
+ *
+ * Tick thread only.
+ */
+public class ViewDistanceController {
+
+    private static final int INTERVAL_TICKS = 20;
+
+    // Shrink when what's waiting would take longer than this to reach the client
+    private static final double MAX_BACKLOG_SECONDS = 2.0;
+    // Only grow when the socket is this close to empty, and never shrink for less than this
+    private static final long GROW_MAX_PENDING = 64 * 1024;
+    // Only grow while ticks take less than this share of the budget
+    private static final double GROW_MAX_TICK_LOAD = 0.8;
+
+    private final int minDistance;
+    private final int maxDistance;
+    private int ticks = 0;
+
+    private long grown = 0;
+    private long shrunk = 0;
+    private int lastMin, lastMax;
+    private double lastAvg;
+
+    public ViewDistanceController(int minDistance, int maxDistance) {
+        this.minDistance = minDistance;
+        this.maxDistance = maxDistance;
+
+        Metrics.register("net.viewDistance", () -> String.format("min=%d avg=%.1f max=%d grown=%d shrunk=%d",
+                lastMin, lastAvg, lastMax, grown, shrunk));
+    }
+
+    /**
+     * Resize view distances if it's time. Call after the players are flushed, so what's pending is
+     * everything sent this tick.
+     * @param players Everyone in the world
+     * @param recentTickNanos How long ticks have been taking, see {@link TickStats#getRecentNanos()}
+     */
+    public void tick(Collection<Player> players, long recentTickNanos) {
+        if (++ticks < INTERVAL_TICKS) return;
+        ticks = 0;
+
+        boolean overBudget = recentTickNanos > TickStats.TICK_NANOS;
+        boolean roomToGrow = recentTickNanos < TickStats.TICK_NANOS * GROW_MAX_TICK_LOAD;
+        double seconds = INTERVAL_TICKS * TickStats.TICK_NANOS / 1e9;
+
+        int min = Integer.MAX_VALUE, max = 0;
+        long total = 0;
+        for (Player player : players) {
+            Connection connection = Connection.get(player.getChannel());
+            long bytesOut = connection == null ? 0 : connection.getBytesOut();
+            long pending = player.getPendingBytes();
+
+            // What actually left the socket since last time. Both counters take a write when it's handed
+            // to the channel, file regions included (see FrameSizeEstimator), so the difference is what drained.
+            long drained = (bytesOut - player.getViewDistanceBytesOut()) - (pending - player.getViewDistancePending());
+            double drainRate = Math.max(0, drained) / seconds;
+            player.setViewDistanceBytesOut(bytesOut);
+            player.setViewDistancePending(pending);
+
+            // A little pending is just the last flush on its way, only a real backlog counts
+            boolean backedUp = pending >= GROW_MAX_PENDING && pending > drainRate * MAX_BACKLOG_SECONDS;
+
+            int distance = player.getViewDistance();
+            if (overBudget || backedUp) {
+                distance = Math.max(minDistance, distance - 1);
+            } else if (roomToGrow && player.getChunkQueueDepth() == 0 && pending < GROW_MAX_PENDING && player.getChannel().isWritable()) {
+                distance = Math.min(maxDistance, distance + 1);
+            }
+
+            if (distance != player.getViewDistance()) {
+                if (distance > player.getViewDistance()) grown++; else shrunk++;
+                player.setViewDistance(distance);
+                player.setForceUpdate(true); // World#update re-walks what's in view
+            }
+
+            min = Math.min(min, distance);
+            max = Math.max(max, distance);
+            total += distance;
+        }
+
+        lastMin = players.isEmpty() ? 0 : min;
+        lastMax = max;
+        lastAvg = players.isEmpty() ? 0 : total / (double) players.size();
+    }
+}
@@ -2,9 +2,22 @@ package com.james090500.world;
 
 import com.james090500.BlockGameServer;
 import com.james090500.Player;
+import com.james090500.ServerConfig;
 import com.james090500.blocks.Block;
-import com.james090500.network.packets.ChunkPacket;
+import com.james090500.network.ChunkPacketCache;
+import com.james090500.network.Connection;
+import com.james090500.network.PacketBroadcaster;
+import com.james090500.network.Protocol;
+import com.james090500.network.packets.BlockUpdatePacket;
+import com.james090500.network.packets.ChunkCachedPacket;
+import com.james090500.network.packets.CompressedChunkPacket;
+import com.james090500.network.packets.MultiBlockChangePacket;
+import com.james090500.utils.Metrics;
 import com.james090500.utils.ThreadUtil;
+import com.james090500.world.codec.ChunkCodec;
+import com.james090500.world.codec.ChunkCodecs;
+import io.netty.buffer.ByteBuf;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import lombok.Getter;
@@ -15,26 +28,89 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class World {
 
-    private final Map<String, Region> regions = new HashMap<>();
+    private final Map<String, Region> regions = new ConcurrentHashMap<>();
+
+    // Chunk I/O, parallel across regions. I/O bound so allow more threads than cores.
+    @Getter
+    private final RegionIO regionIO = new RegionIO(Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors() * 2)));
+
+    // Chunks being read from disk, and chunks read and waiting to be added on the tick thread
+    private final Set<ChunkPos> loading = new HashSet<>();
+    private final ConcurrentLinkedQueue<Chunk> loaded = new ConcurrentLinkedQueue<>();
+
+    // Chunks dirtied by setChunkBlock, possibly off the tick thread like a tree spilling into a
+    // neighbour during worldgen, waiting to be handed to the AutoSaver
+    private final ConcurrentLinkedQueue<Chunk> dirtied = new ConcurrentLinkedQueue<>();
 
     private final Object2ObjectMap<ChunkPos, Chunk> chunks = new Object2ObjectOpenHashMap<>();
 
     public record ChunkPos(int x, int y) { }
     public record ChunkOffset(int dx, int dz, int distSq) {}
 
+    // Encoded chunk packets shared between players
+    @Getter
+    private final ChunkPacketCache chunkPacketCache = new ChunkPacketCache();
+
+    // Players each chunk has been sent to, the reverse of Player#getLoadedChunks
+    private final Object2ObjectMap<ChunkPos, List<Player>> watchers = new Object2ObjectOpenHashMap<>();
+
     //public final Int2ObjectOpenHashMap<Entity> entities = new Int2ObjectOpenHashMap<>();
 
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    @Getter
+    private final AutoSaver autoSaver = new AutoSaver(this);
+
+    @Getter
+    private final EntityTracker entityTracker = new EntityTracker(this);
+
+    @Getter
+    private final EditLog editLog;
+
+    // Edits replayed from the log for chunks that aren't loaded yet, applied once the chunk is finished.
+    // Packed per edit as localX | localZ << 4 | y << 8 | block << 17.
+    private final Object2ObjectMap<ChunkPos, PendingEdits> pendingEdits = new Object2ObjectOpenHashMap<>();
+
+    private static class PendingEdits {
+        long walSegment = Long.MAX_VALUE;
+        final IntArrayList edits = new IntArrayList();
+    }
+
+    // Most chunk packet bytes sent to one player per tick, so a joining player can't hog the tick or the socket
+    private static final long CHUNK_BYTES_PER_TICK = 2 * 1024 * 1024;
+
+    // Block changes made this tick, per chunk. Packed like pending edits.
+    private final Object2ObjectMap<ChunkPos, ChunkChanges> blockChanges = new Object2ObjectOpenHashMap<>();
+
+    private static class ChunkChanges {
+        // The player behind every change, or null if there was more than one
+        Player origin;
+        final IntArrayList edits = new IntArrayList();
+    }
+
+    // Past this many changes in a tick watchers get the whole chunk again instead (a compressed chunk is a few KB)
+    private static final int RESEND_CHUNK_THRESHOLD = 512;
+
+    private final LongAdder changeCount = new LongAdder();
+    private final LongAdder chunkResends = new LongAdder();
+
+    // How often unneeded edit log segments are dropped
+    private static final int CHECKPOINT_INTERVAL_TICKS = 100;
+    private int ticksSinceCheckpoint = 0;
 
     @Getter
     private int worldSeed;
-    private final int worldSize = 16;
+
+    // Per player view distances, and the chunk offsets for each distance
+    @Getter
+    private final ViewDistanceController viewDistanceController;
+    @SuppressWarnings("unchecked")
+    private List<ChunkOffset>[] offsetsByDistance = new List[0];
 
     @Getter
     private String worldName;
@@ -42,9 +118,12 @@ public class World {
     /**
      * Start a world instance
      * @param name The name, if exists it will load a world otherwise load a new one
+     * @param seed The seed for a new world, 0 for a random one. An existing world keeps its own.
      */
-    public World(String name) {
+    public World(String name, int seed) {
         this.worldName = name;
+        ServerConfig config = BlockGameServer.getInstance().getConfig();
+        this.viewDistanceController = new ViewDistanceController(config.getMinViewDistance(), config.getViewDistance());
         File worldPath = new File("worlds/" + worldName);
         File worldData = new File(worldPath + "/world.bg");
         if(!worldPath.exists()) {
@@ -52,7 +131,7 @@ public class World {
             worldPath.mkdirs();
 
             // Generate seed
-            this.worldSeed = (int) Math.floor(Math.random() * Integer.MAX_VALUE);
+            this.worldSeed = seed != 0 ? seed : (int) Math.floor(Math.random() * Integer.MAX_VALUE);
 
             // Write to file
             try (RandomAccessFile raf = new RandomAccessFile(worldData, "rw")) {
@@ -68,7 +147,22 @@ public class World {
             }
         }
 
-        scheduler.scheduleAtFixedRate(this::saveWorld, 5, 5, TimeUnit.MINUTES);
+        Metrics.register("net.blockChanges", () -> String.format("changes=%d chunkResends=%d", changeCount.sum(), chunkResends.sum()));
+
+        // Replay edits that hadn't reached a region file before the last shutdown
+        try {
+            this.editLog = new EditLog(new File(worldPath, "edits"));
+            int replayed = this.editLog.replay((segment, x, y, z, block) -> {
+                PendingEdits pending = pendingEdits.computeIfAbsent(new ChunkPos(Math.floorDiv(x, 16), Math.floorDiv(z, 16)), k -> new PendingEdits());
+                pending.walSegment = Math.min(pending.walSegment, segment);
+                pending.edits.add(Math.floorMod(x, 16) | Math.floorMod(z, 16) << 4 | y << 8 | (block & 0xFF) << 17);
+            });
+            if (replayed > 0) {
+                BlockGameServer.getLogger().info("Replayed " + replayed + " block edits across " + pendingEdits.size() + " chunks");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
@@ -126,7 +220,116 @@ public class World {
      * @param block The block or null if no block
      */
     public void setBlock(int x, int y, int z, byte block) {
+        this.setBlock(x, y, z, block, null);
+    }
+
+    /**
+     * Sets a block in the world on behalf of a player
+     * @param x The world x coord
+     * @param y The world y coord
+     * @param z The world z coord
+     * @param block The block or null if no block
+     * @param origin The player who made the change, they aren't sent it back. Null for everyone.
+     */
+    public void setBlock(int x, int y, int z, byte block, Player origin) {
+        Chunk target = this.chunks.get(new ChunkPos(Math.floorDiv(x, 16), Math.floorDiv(z, 16)));
+        if (target != null && (y < 0 || y >= target.chunkHeight)) return; // out of the world, nothing to edit
+
         this.setChunkBlock(0, 0, x, y, z, block);
+
+        if (target != null) {
+            // Log first, the chunk itself reaches its region lazily
+            editLog.append(x, y, z, block);
+            target.lastEditTime = System.currentTimeMillis();
+            target.editCount++;
+            autoSaver.markDirty(target, editLog.getSegment());
+
+            // Sent to watchers with the rest of this tick's changes to the chunk
+            ChunkChanges changes = blockChanges.computeIfAbsent(new ChunkPos(target.chunkX, target.chunkZ), k -> new ChunkChanges());
+            if (changes.edits.isEmpty()) {
+                changes.origin = origin;
+            } else if (changes.origin != origin) {
+                changes.origin = null; // more than one player, echo to everyone rather than encode per player
+            }
+            changes.edits.add(Math.floorMod(x, 16) | Math.floorMod(z, 16) << 4 | y << 8 | (block & 0xFF) << 17);
+        }
+    }
+
+    /**
+     * Send each chunk's block changes from this tick to its watchers: one packet per chunk, a fresh copy
+     * of the chunk if it changed a lot, or one packet per block for clients without multi block changes
+     */
+    private void sendBlockChanges() {
+        if (blockChanges.isEmpty()) return;
+
+        for (Object2ObjectMap.Entry<ChunkPos, ChunkChanges> entry : blockChanges.object2ObjectEntrySet()) {
+            ChunkPos pos = entry.getKey();
+            ChunkChanges changes = entry.getValue();
+            List<Player> chunkWatchers = watchers.get(pos);
+            if (chunkWatchers == null) continue;
+
+            Player origin = changes.origin;
+            if (changes.edits.size() > RESEND_CHUNK_THRESHOLD) {
+                // Cheaper to send the chunk again, it goes out with the player's other queued chunks
+                for (Player player : new ArrayList<>(chunkWatchers)) {
+                    if (player == origin) continue;
+                    player.getLoadedChunks().remove(pos);
+                    removeWatcher(pos, player);
+                    player.setForceUpdate(true);
+                }
+                chunkResends.increment();
+                continue;
+            }
+
+            PacketBroadcaster.broadcast(new MultiBlockChangePacket(pos.x(), pos.y(), changes.edits), chunkWatchers,
+                    player -> player != origin && player.hasCapability(Protocol.CAP_MULTI_BLOCK));
+
+            // Older clients, one packet per change
+            boolean legacy = false;
+            for (Player player : chunkWatchers) {
+                if (player != origin && !player.hasCapability(Protocol.CAP_MULTI_BLOCK)) legacy = true;
+            }
+            if (!legacy) continue;
+            for (int i = 0; i < changes.edits.size(); i++) {
+                int edit = changes.edits.getInt(i);
+                PacketBroadcaster.broadcast(new BlockUpdatePacket(pos.x() * 16 + (edit & 15), (edit >>> 8) & 511, pos.y() * 16 + ((edit >>> 4) & 15), (byte) (edit >>> 17)),
+                        chunkWatchers, player -> player != origin && !player.hasCapability(Protocol.CAP_MULTI_BLOCK));
+            }
+        }
+
+        for (ChunkChanges changes : blockChanges.values()) {
+            changeCount.add(changes.edits.size());
+        }
+        blockChanges.clear();
+    }
+
+    /**
+     * Apply edits replayed from the log to a chunk that has finished loading or generating
+     * @param pos The chunk position
+     * @param chunk The chunk
+     */
+    private void applyPendingEdits(ChunkPos pos, Chunk chunk) {
+        PendingEdits pending = pendingEdits.remove(pos);
+        if (pending == null) return;
+
+        for (int i = 0; i < pending.edits.size(); i++) {
+            int edit = pending.edits.getInt(i);
+            chunk.setBlock(edit & 15, (edit >>> 8) & 511, (edit >>> 4) & 15, (byte) (edit >>> 17));
+        }
+        chunk.bumpVersion();
+        chunk.needsMeshing = true;
+        autoSaver.markDirty(chunk, pending.walSegment);
+    }
+
+    /**
+     * Drop edit log segments whose edits are all in region files now
+     */
+    private void checkpointEditLog() {
+        long oldest = Math.min(editLog.getSegment(), autoSaver.getOldestWalSegment());
+        for (PendingEdits pending : pendingEdits.values()) {
+            oldest = Math.min(oldest, pending.walSegment);
+        }
+        editLog.checkpoint(oldest);
     }
 
     /**
@@ -183,8 +386,12 @@ public class World {
 
         // Update block and flag for meshing
         target.setBlock(x, y, z, block);
+        target.bumpVersion();
         target.needsMeshing = true;
-        target.needsSaving = true;
+        if (!target.needsSaving) {
+            target.needsSaving = true;
+            dirtied.add(target);
+        }
 
         // Check if the block is on the chunk border, and update neighbors
         if (x == 0) {
@@ -205,18 +412,33 @@ public class World {
         }
     }
 
-    public List<Chunk> getPlayerChunks(Player player) {
-        // Load/generate nearby chunks in render distance
-        List<ChunkOffset> offsets = new ArrayList<>();
-        for (int dx = -worldSize; dx <= worldSize; dx++) {
-            for (int dz = -worldSize; dz <= worldSize; dz++) {
-                int distSq = dx * dx + dz * dz;
-                if (distSq > worldSize * worldSize) continue;
-                offsets.add(new ChunkOffset(dx, dz, distSq));
+    /**
+     * Chunk offsets within a view distance, closest first. Built once per distance.
+     * @param distance The radius in chunks
+     */
+    private List<ChunkOffset> getOffsets(int distance) {
+        distance = Math.max(0, distance);
+        if (distance >= offsetsByDistance.length) {
+            offsetsByDistance = Arrays.copyOf(offsetsByDistance, distance + 1);
+        }
+        if (offsetsByDistance[distance] == null) {
+            List<ChunkOffset> offsets = new ArrayList<>();
+            for (int dx = -distance; dx <= distance; dx++) {
+                for (int dz = -distance; dz <= distance; dz++) {
+                    int distSq = dx * dx + dz * dz;
+                    if (distSq > distance * distance) continue;
+                    offsets.add(new ChunkOffset(dx, dz, distSq));
+                }
             }
+            offsets.sort(Comparator.comparingInt(ChunkOffset::distSq)); // Closest first
+            offsetsByDistance[distance] = List.copyOf(offsets);
         }
+        return offsetsByDistance[distance];
+    }
 
-        offsets.sort(Comparator.comparingInt(ChunkOffset::distSq)); // Closest first
+    public List<Chunk> getPlayerChunks(Player player) {
+        // Load/generate nearby chunks in render distance
+        List<ChunkOffset> offsets = getOffsets(player.getViewDistance());
 
         // Render chunks from players pos.
         List<Chunk> finalChunks = new ArrayList<>();
@@ -229,68 +451,138 @@ public class World {
         return finalChunks;
     }
 
+    /**
+     * Get the players a chunk has been sent to
+     * @param x chunkX
+     * @param z chunkZ
+     * @return The players, empty if none
+     */
+    public List<Player> getWatchers(int x, int z) {
+        List<Player> list = watchers.get(new ChunkPos(x, z));
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    /**
+     * Forget every chunk sent to a player, when they leave
+     * @param player The player
+     */
+    public void removeWatcher(Player player) {
+        for (ChunkPos pos : player.getLoadedChunks()) {
+            removeWatcher(pos, player);
+        }
+        player.getLoadedChunks().clear();
+    }
+
+    private void addWatcher(ChunkPos pos, Player player) {
+        player.getLoadedChunks().add(pos);
+        watchers.computeIfAbsent(pos, k -> new ArrayList<>(2)).add(player);
+    }
+
+    private void removeWatcher(ChunkPos pos, Player player) {
+        List<Player> list = watchers.get(pos);
+        if (list == null) return;
+        list.remove(player);
+        if (list.isEmpty()) watchers.remove(pos);
+    }
+
     /**
      * update the world. This also loads and remove chunks as needed
      */
     public void update() {
+        // Make last tick's edits durable in one group commit
+        editLog.commit();
+
+        // Add chunks the I/O threads have finished reading
+        Chunk loadedChunk;
+        while ((loadedChunk = loaded.poll()) != null) {
+            ChunkPos pos = new ChunkPos(loadedChunk.chunkX, loadedChunk.chunkZ);
+            loading.remove(pos);
+            chunks.putIfAbsent(pos, loadedChunk);
+        }
+
+        // Queue chunks changed outside setBlock, they aren't in the edit log so hold no segment
+        Chunk dirtiedChunk;
+        while ((dirtiedChunk = dirtied.poll()) != null) {
+            autoSaver.markDirty(dirtiedChunk, Long.MAX_VALUE);
+        }
+
+        // Spread saving over ticks rather than a periodic burst
+        autoSaver.tick();
+        sendBlockChanges();
+        if (++ticksSinceCheckpoint >= CHECKPOINT_INTERVAL_TICKS) {
+            ticksSinceCheckpoint = 0;
+            checkpointEditLog();
+        }
+
         for(Player player : BlockGameServer.getInstance().getPlayers().values()) {
             int playerChunkX = (int) Math.floor(player.getPosition().x / 16);
             int playerChunkZ = (int) Math.floor(player.getPosition().z / 16);
 
             // Load/generate nearby chunks in render distance
-            List<ChunkOffset> offsets = new ArrayList<>();
-            for (int dx = -worldSize; dx <= worldSize; dx++) {
-                for (int dz = -worldSize; dz <= worldSize; dz++) {
-                    int distSq = dx * dx + dz * dz;
-                    if (distSq > worldSize * worldSize) continue;
-                    offsets.add(new ChunkOffset(dx, dz, distSq));
-                }
-            }
-
-            offsets.sort(Comparator.comparingInt(ChunkOffset::distSq)); // Closest first
+            List<ChunkOffset> offsets = getOffsets(player.getViewDistance());
 
             for (ChunkOffset offset : offsets) {
                 ChunkPos pos = new ChunkPos(playerChunkX + offset.dx(), playerChunkZ + offset.dz());
                 Chunk chunk = chunks.get(pos);
                 if (chunk != null) {
                     chunk.generate();
+                    if (!pendingEdits.isEmpty() && chunk.chunkStatus == ChunkStatus.FINISHED) {
+                        applyPendingEdits(pos, chunk);
+                    }
                 }
             }
 
             // No point looping if we aren't moving
-            if (playerChunkX == player.getLastChunkX() && playerChunkZ == player.getLastChunkZ() && !player.isForceUpdate()) return;
+            if (playerChunkX == player.getLastChunkX() && playerChunkZ == player.getLastChunkZ() && !player.isForceUpdate()) continue;
 
-            // Render chunks from players pos.
+            // Send chunks nearest first. Anything not read from disk yet, over the tick's budget or held
+            // back because the client's socket is backed up stays queued and is picked up again next
+            // tick, re-sorted around wherever the player is by then.
             Set<ChunkPos> requiredChunks = new HashSet<>();
+            boolean compressed = player.hasCapability(Protocol.CAP_LZ4_CHUNKS);
+            Connection clientCache = player.hasCapability(Protocol.CAP_CHUNK_CACHE) ? Connection.get(player.getChannel()) : null;
+            long budget = CHUNK_BYTES_PER_TICK;
+            int queued = 0;
             for (ChunkOffset offset : offsets) {
                 ChunkPos pos = new ChunkPos(playerChunkX + offset.dx(), playerChunkZ + offset.dz());
                 requiredChunks.add(pos);
 
-                if (!chunks.containsKey(pos)) {
-                    // Try and load data from disk
-                    //TODO remove this from main thread as its slow
-                    byte[] chunkData = loadChunk(pos.x(), pos.y());
-
-                    // Generate chunk from data or new terrain
-                    Chunk newChunk;
-                    if (chunkData == null) {
-                        newChunk = new Chunk(pos.x(), pos.y());
-                    } else {
-                        newChunk = new Chunk(pos.x(), pos.y(), chunkData);
-                    }
+                Chunk chunk = chunks.get(pos);
+                if (chunk == null) {
+                    requestChunk(pos);
+                }
+                if (player.getLoadedChunks().contains(pos)) continue;
 
-                    chunks.put(pos, newChunk);
+                if (chunk == null || budget <= 0 || !player.hasChunkRoom()) {
+                    queued++;
+                    continue;
                 }
 
-                // Send player chunks
-                if (!player.getLoadedChunks().contains(pos)) {
-                    player.sendPacket(new ChunkPacket(pos.x, pos.y, chunks.get(pos).chunkData));
-                    player.getLoadedChunks().add(pos);
+                // Send player chunks, or just tell them to use their copy if it's current
+                if (clientCache != null && clientCache.hasCachedChunk(pos, chunk.getHash())) {
+                    player.sendPacket(new ChunkCachedPacket(pos.x(), pos.y()));
+                } else {
+                    Region.StoredBlock stored = compressed ? chunk.getStoredBlock() : null;
+                    if (stored != null) {
+                        // Unchanged since it was read from disk, the region file already has the packet body
+                        budget -= CompressedChunkPacket.sendStored(player, pos.x(), pos.y(), stored);
+                    } else {
+                        ByteBuf packet = chunkPacketCache.get(pos, chunk, compressed);
+                        budget -= packet.readableBytes();
+                        player.sendChunk(pos, packet);
+                    }
+                    // The client keeps what it's sent, so walking back here won't need it again
+                    if (clientCache != null) clientCache.putCachedChunk(pos, chunk.getHash());
                 }
+                addWatcher(pos, player);
             }
 
             // Remove chunks from player
-            player.getLoadedChunks().removeIf(pos -> !requiredChunks.contains(pos));
+            player.getLoadedChunks().removeIf(pos -> {
+                if (requiredChunks.contains(pos)) return false;
+                removeWatcher(pos, player);
+                return true;
+            });
 
             // Remove unused chunks if server empty
             if(BlockGameServer.getInstance().getPlayers().isEmpty()) {
@@ -302,8 +594,40 @@ public class World {
 
             player.setLastChunkX(playerChunkX);
             player.setLastChunkZ(playerChunkZ);
-            player.setForceUpdate(false);
+            // Come back next tick for chunks still queued
+            player.setChunkQueueDepth(queued);
+            player.setForceUpdate(queued > 0);
+            if (queued == 0) player.setJoining(false);
         }
+
+        // Other players' movement, now everyone's chunks are up to date
+        entityTracker.tick();
+    }
+
+    /**
+     * Load a chunk from disk on its region's I/O strand, or create it for generation if it isn't there.
+     * The chunk is added to the world on a later tick.
+     * @param pos The chunk position
+     */
+    private void requestChunk(ChunkPos pos) {
+        if (!loading.add(pos)) return;
+
+        Chunk newChunk = new Chunk(pos.x(), pos.y());
+        regionIO.submit(pos.x(), pos.y(), () -> {
+            try {
+                // Try and load data from disk, straight into the new chunk's array
+                if (loadChunk(pos.x(), pos.y(), newChunk.chunkData)) {
+                    newChunk.chunkStatus = ChunkStatus.FINISHED;
+                    newChunk.needsMeshing = true;
+                    // LZ4 clients can be sent the stored copy until it's edited
+                    newChunk.setStoredBlock(findLz4Block(pos.x(), pos.y()));
+                }
+                loaded.add(newChunk);
+            } catch (RuntimeException e) {
+                BlockGameServer.getLogger().severe("Failed to load chunk " + pos.x() + "," + pos.y() + ": " + e);
+                ThreadUtil.getMainQueue().add(() -> loading.remove(pos)); // retry when next needed
+            }
+        });
     }
 
     public Region getRegion(int chunkX, int chunkZ) {
@@ -320,28 +644,81 @@ public class World {
         });
     }
 
-    public void saveWorld() {
+    /**
+     * Save every unsaved chunk, in parallel across regions, and wait for it. Normal saving is incremental
+     * via the {@link AutoSaver}, this is the full pass used on exit.
+     * @return true if every chunk was written
+     */
+    public boolean saveWorld() {
         BlockGameServer.getLogger().info("Saving World...");
+        long start = System.nanoTime();
+        if (!autoSaver.awaitInFlight(30_000)) {
+            BlockGameServer.getLogger().warning("Timed out waiting for autosave writes");
+        }
+
+        AtomicInteger failed = new AtomicInteger();
+        int count = 0;
         for(Chunk chunk : this.chunks.values()) {
             if(chunk.needsSaving) {
-                BlockGameServer.getInstance().getWorld().saveChunk(chunk.chunkX, chunk.chunkZ, chunk.chunkData);
                 chunk.needsSaving = false;
+                count++;
+                regionIO.submit(chunk.chunkX, chunk.chunkZ, () -> {
+                    try {
+                        saveChunk(chunk);
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                        chunk.needsSaving = true;
+                        BlockGameServer.getLogger().severe("Failed to save chunk " + chunk.chunkX + "," + chunk.chunkZ + ": " + e);
+                    }
+                });
             }
         }
-        BlockGameServer.getLogger().info("Save Complete!");
+        boolean finished = regionIO.awaitIdle(120_000);
+        autoSaver.clear();
+
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        BlockGameServer.getLogger().info("Save Complete! " + count + " chunks in " + ms + "ms" + (failed.get() > 0 ? ", " + failed.get() + " failed" : ""));
+        return finished && failed.get() == 0;
+    }
+
+    /**
+     * Save a chunk to its region, picking a codec from how it's been edited
+     * @param chunk The chunk to save
+     */
+    public void saveChunk(Chunk chunk) {
+        ChunkCodec codec = ChunkCodecs.select(chunk);
+        chunk.editCount = 0;
+        try {
+            getRegion(chunk.chunkX, chunk.chunkZ).saveChunk(chunk.chunkX, chunk.chunkZ, chunk.chunkData, codec);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    public void saveChunk(int chunkX, int chunkZ, byte[] data) {
+    /**
+     * Load a chunk from disk into an existing array
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @param dest The array to fill, normally {@link Chunk#chunkData}
+     * @return true if the chunk was on disk
+     */
+    public boolean loadChunk(int chunkX, int chunkZ, byte[] dest) {
         try {
-            getRegion(chunkX, chunkZ).saveChunk(chunkX, chunkZ, data);
+            return getRegion(chunkX, chunkZ).loadChunk(chunkX, chunkZ, dest);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public byte[] loadChunk(int chunkX, int chunkZ) {
+    /**
+     * Find a chunk's LZ4 block on disk, see {@link Region#findLz4Block}
+     * @param chunkX The chunk X coordinate
+     * @param chunkZ The chunk Z coordinate
+     * @return The block or null
+     */
+    public Region.StoredBlock findLz4Block(int chunkX, int chunkZ) {
         try {
-            return getRegion(chunkX, chunkZ).loadChunk(chunkX, chunkZ);
+            return getRegion(chunkX, chunkZ).findLz4Block(chunkX, chunkZ);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -351,7 +728,12 @@ public class World {
      * Exit the world
      */
     public void exitWorld() {
-        this.scheduler.close();
-        this.saveWorld();
+        boolean saved = this.saveWorld();
+        this.regionIO.shutdown();
+        this.regions.values().forEach(Region::close);
+        this.chunkPacketCache.clear();
+
+        // Everything loaded is in a region now, only edits for chunks never loaded this run still need the log
+        this.editLog.close(saved && pendingEdits.isEmpty());
     }
 }
@@ -0,0 +1,49 @@
+package com.james090500.world.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A way of storing a chunk's block array inside a region record.
+ * Codecs are stateless singletons registered in {@link ChunkCodecs} under the id written to the
+ * region directory, so an id must never be reused once data has been written with it.
+ */
+public interface ChunkCodec {
+
+    /**
+     * @return The id stored in the region directory entry
+     */
+    byte getId();
+
+    /**
+     * @return A short name used in logs and metrics
+     */
+    String getName();
+
+    /**
+     * Upper bound of bytes {@link #encode} may write for a given input
+     * @param srcLen The uncompressed length
+     * @return The maximum encoded length
+     */
+    int maxEncodedLength(int srcLen);
+
+    /**
+     * Encode a chunk into dest at destOff. Does not move dest's position or limit.
+     * @param src The uncompressed chunk
+     * @param dest The buffer to write into, must have maxEncodedLength bytes free after destOff
+     * @param destOff The offset to start writing at
+     * @return The encoded length, or -1 if this codec can't encode src
+     */
+    int encode(byte[] src, ByteBuffer dest, int destOff);
+
+    /**
+     * Decode a payload into dest. Does not move src's position or limit.
+     * @param src The buffer holding the payload
+     * @param srcOff The payload offset in src
+     * @param srcLen The payload length
+     * @param dest The array to fill
+     * @param uncompressedLen The length recorded when the chunk was saved
+     * @return The number of bytes written to dest
+     */
+    int decode(ByteBuffer src, int srcOff, int srcLen, byte[] dest, int uncompressedLen) throws IOException;
+}
@@ -0,0 +1,78 @@
+package com.james090500.world.codec;
+
+import com.james090500.utils.Metrics;
+import com.james090500.world.Chunk;
+
+/**
+ * Registry of chunk codecs, indexed by the codec byte stored in the region directory.
+ * Every codec ever written must stay registered so old regions keep loading.
+ */
+public class ChunkCodecs {
+
+    // Codec identifiers (1 was never used)
+    public static final byte CODEC_RAW = 0;
+    public static final byte CODEC_LZ4 = 2;
+    public static final byte CODEC_RLE_LZ4 = 3;
+    public static final byte CODEC_LZ4_HC = 4;
+
+    public static final ChunkCodec RAW = new RawCodec();
+    public static final ChunkCodec LZ4 = new Lz4Codec(CODEC_LZ4, "lz4", false);
+    public static final ChunkCodec RLE_LZ4 = new RleLz4Codec();
+    public static final ChunkCodec LZ4_HC = new Lz4Codec(CODEC_LZ4_HC, "lz4hc", true);
+
+    // A chunk edited this recently, or this often since its last save, is still being built on
+    private static final long HOT_WINDOW_MS = 60_000;
+    private static final int HOT_EDIT_COUNT = 64;
+    // A chunk untouched for this long is unlikely to be rewritten soon, so spend more time compressing it
+    private static final long COLD_AFTER_MS = 10 * 60_000;
+
+    private static final ChunkCodec[] codecs = new ChunkCodec[256];
+    private static final CodecStats[] stats = new CodecStats[256];
+
+    static {
+        register(RAW);
+        register(LZ4);
+        register(RLE_LZ4);
+        register(LZ4_HC);
+    }
+
+    private static void register(ChunkCodec codec) {
+        int id = codec.getId() & 0xFF;
+        codecs[id] = codec;
+        stats[id] = new CodecStats();
+        Metrics.register("codec." + codec.getName(), stats[id]::summary);
+    }
+
+    /**
+     * Get a codec by its id
+     * @param id The id from the region directory
+     * @return The codec or null if unknown
+     */
+    public static ChunkCodec get(byte id) {
+        return codecs[id & 0xFF];
+    }
+
+    /**
+     * Get the stats for a codec
+     * @param id The codec id
+     * @return The stats or null if unknown
+     */
+    public static CodecStats getStats(byte id) {
+        return stats[id & 0xFF];
+    }
+
+    /**
+     * Pick the codec to save a chunk with based on how it's being edited.
+     * Hot chunks get plain LZ4 as they'll be rewritten soon, cold chunks get LZ4-HC,
+     * and everything in between gets the RLE pre-transform. Region falls back to RAW
+     * if the chosen codec doesn't shrink the chunk.
+     * @param chunk The chunk about to be saved
+     * @return The codec to use
+     */
+    public static ChunkCodec select(Chunk chunk) {
+        long idle = System.currentTimeMillis() - chunk.lastEditTime;
+        if (idle < HOT_WINDOW_MS || chunk.editCount >= HOT_EDIT_COUNT) return LZ4;
+        if (idle >= COLD_AFTER_MS) return LZ4_HC;
+        return RLE_LZ4;
+    }
+}
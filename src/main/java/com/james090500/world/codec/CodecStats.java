@@ -0,0 +1,41 @@
+package com.james090500.world.codec;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals for one codec, updated by whichever thread saves or loads a chunk
+ */
+public class CodecStats {
+
+    private final LongAdder encodes = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    private final LongAdder decodes = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+
+    public void recordEncode(int rawLength, int encodedLength, long nanos) {
+        encodes.increment();
+        encodeNanos.add(nanos);
+        rawBytes.add(rawLength);
+        encodedBytes.add(encodedLength);
+    }
+
+    public void recordDecode(long nanos) {
+        decodes.increment();
+        decodeNanos.add(nanos);
+    }
+
+    /**
+     * @return e.g. "saved=120 ratio=14.20x encode=91000ns/chunk loaded=40 decode=21000ns/chunk"
+     */
+    public String summary() {
+        long enc = encodes.sum();
+        long dec = decodes.sum();
+        long encoded = encodedBytes.sum();
+        double ratio = encoded == 0 ? 0 : (double) rawBytes.sum() / encoded;
+        return String.format("saved=%d ratio=%.2fx encode=%dns/chunk loaded=%d decode=%dns/chunk",
+                enc, ratio, enc == 0 ? 0 : encodeNanos.sum() / enc,
+                dec, dec == 0 ? 0 : decodeNanos.sum() / dec);
+    }
+}
@@ -0,0 +1,50 @@
+package com.james090500.world.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plain LZ4 block compression. The fast compressor is used for chunks that are still being edited,
+ * the high compression one for cold chunks. Both produce the same block format so they share a decoder.
+ */
+public class Lz4Codec implements ChunkCodec {
+
+    private static final LZ4Factory lz4 = LZ4Factory.fastestInstance();
+
+    private final byte id;
+    private final String name;
+    private final LZ4Compressor compressor;
+
+    public Lz4Codec(byte id, String name, boolean high) {
+        this.id = id;
+        this.name = name;
+        this.compressor = high ? lz4.highCompressor() : lz4.fastCompressor();
+    }
+
+    @Override
+    public byte getId() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int maxEncodedLength(int srcLen) {
+        return compressor.maxCompressedLength(srcLen);
+    }
+
+    @Override
+    public int encode(byte[] src, ByteBuffer dest, int destOff) {
+        return compressor.compress(ByteBuffer.wrap(src), 0, src.length, dest, destOff, maxEncodedLength(src.length));
+    }
+
+    @Override
+    public int decode(ByteBuffer src, int srcOff, int srcLen, byte[] dest, int uncompressedLen) {
+        return lz4.safeDecompressor().decompress(src, srcOff, srcLen, ByteBuffer.wrap(dest), 0, uncompressedLen);
+    }
+}
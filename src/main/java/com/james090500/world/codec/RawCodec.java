@@ -0,0 +1,38 @@
+package com.james090500.world.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stores the block array as is. Used when no other codec shrinks the chunk.
+ */
+public class RawCodec implements ChunkCodec {
+
+    @Override
+    public byte getId() {
+        return ChunkCodecs.CODEC_RAW;
+    }
+
+    @Override
+    public String getName() {
+        return "raw";
+    }
+
+    @Override
+    public int maxEncodedLength(int srcLen) {
+        return srcLen;
+    }
+
+    @Override
+    public int encode(byte[] src, ByteBuffer dest, int destOff) {
+        dest.put(destOff, src);
+        return src.length;
+    }
+
+    @Override
+    public int decode(ByteBuffer src, int srcOff, int srcLen, byte[] dest, int uncompressedLen) {
+        // Defensive: RAW should match expected size, trim if longer
+        int len = Math.min(srcLen, uncompressedLen);
+        src.get(srcOff, dest, 0, len);
+        return len;
+    }
+}
@@ -0,0 +1,140 @@
+package com.james090500.world.codec;
+
+import com.james090500.world.Chunk;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Voxel-aware codec: the chunk is walked column by column (y innermost) and run-length encoded,
+ * then the runs are LZ4 compressed. Terrain columns are long runs of stone, water and air, so the
+ * RLE pass removes most of the data and LZ4 then picks up the columns that repeat.
+ *
+ * Payload layout:
+ *   u32 rleLength (record byte order)
+ *   LZ4 block of the runs, each run being u8 block id + varint length
+ */
+public class RleLz4Codec implements ChunkCodec {
+
+    private static final int SIZE = 16;
+    private static final int HEIGHT = 300;
+
+    private static final LZ4Factory lz4 = LZ4Factory.fastestInstance();
+    private static final LZ4Compressor compressor = lz4.fastCompressor();
+
+    // Worst case every voxel is its own run: 1 byte id + 1 byte length
+    private static final int MAX_RLE_LENGTH = Chunk.DATA_LENGTH * 2;
+
+    // Per-thread buffer for the intermediate runs so encoding and decoding don't allocate
+    private static final ThreadLocal<ByteBuffer> RUNS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_RLE_LENGTH));
+
+    @Override
+    public byte getId() {
+        return ChunkCodecs.CODEC_RLE_LZ4;
+    }
+
+    @Override
+    public String getName() {
+        return "rle+lz4";
+    }
+
+    @Override
+    public int maxEncodedLength(int srcLen) {
+        return 4 + compressor.maxCompressedLength(srcLen * 2);
+    }
+
+    @Override
+    public int encode(byte[] src, ByteBuffer dest, int destOff) {
+        if (src.length != Chunk.DATA_LENGTH) return -1;
+
+        ByteBuffer runs = RUNS.get();
+        byte[] rle = runs.array();
+        int rleLen = 0;
+
+        byte block = src[0];
+        int count = 0;
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                int base = x + SIZE * HEIGHT * z;
+                for (int y = 0; y < HEIGHT; y++) {
+                    byte next = src[base + SIZE * y];
+                    if (next == block) {
+                        count++;
+                    } else {
+                        rleLen = writeRun(rle, rleLen, block, count);
+                        block = next;
+                        count = 1;
+                    }
+                }
+            }
+        }
+        rleLen = writeRun(rle, rleLen, block, count);
+
+        int maxLen = compressor.maxCompressedLength(rleLen);
+        int compLen = compressor.compress(runs, 0, rleLen, dest, destOff + 4, maxLen);
+        if (compLen <= 0) return -1;
+
+        dest.putInt(destOff, rleLen);
+        return 4 + compLen;
+    }
+
+    @Override
+    public int decode(ByteBuffer src, int srcOff, int srcLen, byte[] dest, int uncompressedLen) throws IOException {
+        if (uncompressedLen != Chunk.DATA_LENGTH || dest.length < uncompressedLen) {
+            throw new IOException("RLE chunk has unexpected length " + uncompressedLen);
+        }
+
+        int rleLen = src.getInt(srcOff);
+        if (rleLen < 0 || rleLen > MAX_RLE_LENGTH) throw new IOException("Corrupt RLE length " + rleLen);
+
+        ByteBuffer runs = RUNS.get();
+        int read = lz4.safeDecompressor().decompress(src, srcOff + 4, srcLen - 4, runs, 0, rleLen);
+        if (read != rleLen) throw new IOException("RLE payload truncated");
+
+        byte[] rle = runs.array();
+        int in = 0;
+        int remaining = 0;
+        byte block = 0;
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                int base = x + SIZE * HEIGHT * z;
+                for (int y = 0; y < HEIGHT; y++) {
+                    if (remaining == 0) {
+                        if (in >= rleLen) throw new IOException("RLE runs end early");
+                        block = rle[in++];
+
+                        // varint run length
+                        int shift = 0;
+                        int b;
+                        do {
+                            if (in >= rleLen || shift > 28) throw new IOException("Corrupt RLE run");
+                            b = rle[in++];
+                            remaining |= (b & 0x7F) << shift;
+                            shift += 7;
+                        } while ((b & 0x80) != 0);
+                        if (remaining <= 0) throw new IOException("Corrupt RLE run");
+                    }
+                    dest[base + SIZE * y] = block;
+                    remaining--;
+                }
+            }
+        }
+        return uncompressedLen;
+    }
+
+    /**
+     * Append a run to the buffer
+     * @return The new write position
+     */
+    private static int writeRun(byte[] rle, int pos, byte block, int count) {
+        rle[pos++] = block;
+        while (count >= 0x80) {
+            rle[pos++] = (byte) (count | 0x80);
+            count >>>= 7;
+        }
+        rle[pos++] = (byte) count;
+        return pos;
+    }
+}